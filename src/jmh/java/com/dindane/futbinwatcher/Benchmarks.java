@@ -0,0 +1,21 @@
+package com.dindane.futbinwatcher;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with JMH's usual command line, writing the results as JSON to jmh-result.json
+ * unless another result format or file is given.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) arguments.addAll(Arrays.asList("-rf", "json"));
+        if (!arguments.contains("-rff")) arguments.addAll(Arrays.asList("-rff", "jmh-result.json"));
+
+        Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+}
@@ -0,0 +1,86 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the prices out of player pages, through the Jsoup/Xsoup selectors and through the streaming extractor.
+ *
+ * Uses the pages recorded with --record-dir found in the directory given by -Dbenchmark.pages,
+ * or a bundled sample page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+    @Param({"XBOX", "ALL"})
+    private Platform platform;
+
+    private final List<String> pages = new ArrayList<>();
+    private final ParsedLine line = new ParsedLine("4610/modric", Action.BUY, 90000L);
+    private SelectorRegistry.PageSelectors selectors;
+    private StreamingExtractor streamingExtractor;
+
+    @Setup
+    public void setUp() throws Throwable {
+        String directory = System.getProperty("benchmark.pages");
+        File[] files = (directory == null) ? null : new File(directory).listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) pages.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            }
+        }
+        if (pages.isEmpty()) pages.add(samplePage());
+
+        selectors = SelectorRegistry.forPlatform(platform);
+        streamingExtractor = StreamingExtractor.forPlatform(platform);
+    }
+
+    @Benchmark
+    public void dom(Blackhole blackhole) {
+        for (String page : pages) {
+            blackhole.consume(selectors.extract(Jsoup.parse(page, "http://www.futbin.com/"), "url", line));
+        }
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        for (String page : pages) {
+            blackhole.consume(streamingExtractor.extract(new StringReader(page), "url", line));
+        }
+    }
+
+    static String samplePage() throws IOException {
+        try (InputStream in = ExtractionBenchmark.class.getResourceAsStream("player.html")) {
+            return IOUtils.toString(in, "UTF-8");
+        }
+    }
+}
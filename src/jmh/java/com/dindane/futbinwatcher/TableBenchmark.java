@@ -0,0 +1,107 @@
+package com.dindane.futbinwatcher;
+
+import com.bethecoder.ascii_table.ASCIITable;
+import com.bethecoder.ascii_table.ASCIITableHeader;
+import com.bethecoder.ascii_table.impl.CollectionASCIITableAware;
+import com.bethecoder.ascii_table.impl.SimpleASCIITableImpl;
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+import org.kohsuke.args4j.CmdLineParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and renders the price tables of large watch lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+    @Param({"1000", "10000"})
+    private Integer rows;
+
+    private CLI cli;
+    private PriceSnapshot snapshot;
+    private int[] slots;
+    private List<Player> players;
+    private ASCIITableHeader[] header;
+    private CharSequence[][] data;
+    private SimpleASCIITableImpl table;
+    private StringBuilder out;
+
+    @Setup
+    public void setUp() throws Exception {
+        cli = new CLI();
+        new CmdLineParser(cli).parseArgument("--platform=XBOX", "--players-list=players_list.txt");
+        cli.initColors();
+
+        List<ParsedLine> lines = new ArrayList<>(rows);
+        for (Integer i = 0; i < rows; i++) lines.add(new ParsedLine(String.valueOf(i), Action.BUY, 10000L + i * 13));
+
+        snapshot = new PriceSnapshot(Platform.XBOX, lines);
+        players = new ArrayList<>(rows);
+        for (Integer i = 0; i < rows; i++) {
+            players.add(new Player("Player " + i, "http://www.futbin.com/16/player/" + i, 10000L + i * 13,
+                    10000L + i * 11, -1L, -1L, Action.BUY));
+        }
+        snapshot.apply(lines, players);
+        slots = snapshot.slots(Action.BUY);
+
+        header = new ASCIITableHeader[]{
+                new ASCIITableHeader(" "),
+                new ASCIITableHeader("Name", ASCIITable.ALIGN_LEFT),
+                new ASCIITableHeader("Target price"),
+                new ASCIITableHeader("Lowest BIN"),
+                new ASCIITableHeader("Difference")
+        };
+        data = cli.listToString2DArray(snapshot, slots, Action.BUY);
+        table = new SimpleASCIITableImpl();
+        out = new StringBuilder();
+    }
+
+    @Benchmark
+    public CharSequence[][] listToString2DArray() {
+        cli.invalidateRows(slots);
+        return cli.listToString2DArray(snapshot, slots, Action.BUY);
+    }
+
+    @Benchmark
+    public String getTable() {
+        return table.getTable(header, data);
+    }
+
+    /**
+     * Renders into a reused buffer, so only the renderer's own allocations are measured (run with -prof gc).
+     */
+    @Benchmark
+    public StringBuilder writeTable() throws IOException {
+        out.setLength(0);
+        table.writeTable(header, data, out);
+        return out;
+    }
+
+    /**
+     * Reads the cells of the players from their getters.
+     */
+    @Benchmark
+    public List<List<Object>> collectionData() {
+        return new CollectionASCIITableAware<>(players, "name", "url", "action", "stale").getData();
+    }
+}
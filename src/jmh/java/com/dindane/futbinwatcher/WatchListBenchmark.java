@@ -0,0 +1,72 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.IdParsingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses large watch lists line by line, as the CLI does when it starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WatchListBenchmark {
+    @Param({"1000", "100000"})
+    private Integer size;
+
+    private String[] lines;
+    private List<String> texts;
+    private int[] lineNumbers;
+    private CLI cli;
+    private WatchListLoader loader;
+
+    @Setup
+    public void setUp() {
+        lines = new String[size];
+        for (Integer i = 0; i < size; i++) {
+            lines[i] = String.format("%s  http://www.futbin.com/16/player/%d/player-%d   for %d",
+                    (i % 2 == 0) ? "buy" : "sell", 1000 + i, i, 1000 + i * 7);
+        }
+        texts = Arrays.asList(lines);
+        lineNumbers = new int[size];
+        for (int i = 0; i < size; i++) lineNumbers[i] = i + 1;
+
+        cli = new CLI();
+        loader = new WatchListLoader();
+    }
+
+    @Benchmark
+    public void parseLine(Blackhole blackhole) throws IdParsingException {
+        for (String line : lines) blackhole.consume(cli.parseLine(line));
+    }
+
+    /**
+     * Parses the whole list at once, in parallel chunks when it's large.
+     */
+    @Benchmark
+    public WatchListLoader.Result load() {
+        return loader.parse(texts, lineNumbers);
+    }
+
+    @Benchmark
+    public void cleanFUTId(Blackhole blackhole) throws IdParsingException {
+        for (String line : lines) blackhole.consume(cli.cleanFUTId(line));
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.bethecoder.ascii_table;
 
+import java.io.IOException;
+
 import com.bethecoder.ascii_table.impl.SimpleASCIITableImpl;
 import com.bethecoder.ascii_table.spec.IASCIITable;
 import com.bethecoder.ascii_table.spec.IASCIITableAware;
@@ -69,11 +71,11 @@ public class ASCIITable implements IASCIITable {
 		asciiTable.printTable(header, headerAlign, data, dataAlign);
 	}
 
-	public String getTable(ASCIITableHeader[] headerObjs, String[][] data) {
+	public String getTable(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
 		return asciiTable.getTable(headerObjs, data);
 	}
 	
-	public void printTable(ASCIITableHeader[] headerObjs, String[][] data) {
+	public void printTable(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
 		asciiTable.printTable(headerObjs, data);
 	}
 
@@ -86,5 +88,25 @@ public class ASCIITable implements IASCIITable {
 	public void printTable(IASCIITableAware asciiTableAware) {
 		asciiTable.printTable(asciiTableAware);
 	}
+
+	@Override
+	public void writeTable(ASCIITableHeader[] headerObjs, CharSequence[][] data, Appendable out) throws IOException {
+		asciiTable.writeTable(headerObjs, data, out);
+	}
+
+	@Override
+	public void writeTable(IASCIITableAware asciiTableAware, Appendable out) throws IOException {
+		asciiTable.writeTable(asciiTableAware, out);
+	}
+
+	@Override
+	public int[] getColumnWidths(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
+		return asciiTable.getColumnWidths(headerObjs, data);
+	}
+
+	@Override
+	public void writeCell(CharSequence cell, int width, int align, Appendable out) throws IOException {
+		asciiTable.writeCell(cell, width, align, out);
+	}
 	
 }
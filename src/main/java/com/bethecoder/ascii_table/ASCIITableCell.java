@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011 K Venkata Sudhakar <kvenkatasudhakar@gmail.com>
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bethecoder.ascii_table;
+
+/**
+ * Represents a styled ASCII table cell, such as a cell colored with ANSI escape codes.
+ * Its length is the length of its content alone, so only the visible characters count
+ * towards the column width, the style being written around the content.
+ * 
+ * Cells can be mixed with strings in the data of a table.
+ *
+ */
+public class ASCIITableCell implements CharSequence {
+
+	public static final String ANSI_RESET = "\u001B[0m";
+	
+	private final String content;
+	private final String style;
+
+	/**
+	 * @param content
+	 * @param style the escape codes written before the content, reset after it. 
+	 * 			Null or empty for no style.
+	 */
+	public ASCIITableCell(String content, String style) {
+		this.content = content;
+		this.style = style;
+	}
+
+	public String getContent() {
+		return content;
+	}
+	
+	public String getStyle() {
+		return style;
+	}
+	
+	/**
+	 * Appends the content surrounded by its style.
+	 * 
+	 * @param out
+	 */
+	public void appendTo(StringBuilder out) {
+		if (style == null || style.isEmpty()) {
+			out.append(content);
+		} else {
+			out.append(style).append(content).append(ANSI_RESET);
+		}
+	}
+	
+	@Override
+	public int length() {
+		return content.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return content.charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return content.subSequence(start, end);
+	}
+	
+	@Override
+	public String toString() {
+		return content;
+	}
+	
+}
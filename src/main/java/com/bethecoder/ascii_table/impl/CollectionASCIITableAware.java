@@ -15,14 +15,18 @@
  */
 package com.bethecoder.ascii_table.impl;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.bethecoder.ascii_table.ASCIITableHeader;
 import com.bethecoder.ascii_table.spec.IASCIITableAware;
@@ -37,6 +41,23 @@ import com.bethecoder.ascii_table.spec.IASCIITableAware;
  */
 public class CollectionASCIITableAware<T> implements IASCIITableAware {
 
+	/**
+	 * Accessors of the properties of every class, looked up once and shared by all the tables.
+	 */
+	private static final ClassValue<ConcurrentMap<String, MethodHandle>> ACCESSORS = 
+			new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+		@Override
+		protected ConcurrentMap<String, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, MethodHandle>();
+		}
+	};
+	
+	/**
+	 * Accessor of a property the class doesn't have, returning null.
+	 */
+	private static final MethodHandle MISSING = MethodHandles.dropArguments(
+			MethodHandles.constant(Object.class, null), 0, Object.class);
+	
 	private List<ASCIITableHeader> headers = null;
 	private List<List<Object>> data = null;
 	
@@ -59,14 +80,16 @@ public class CollectionASCIITableAware<T> implements IASCIITableAware {
 			data = new ArrayList<List<Object>>();
 			List<Object> rowData = null;
 			Class<?> dataClazz = objList.get(0).getClass();
-			Map<String, Method> propertyMethodMap = new HashMap<String, Method>();
+			MethodHandle[] accessors = new MethodHandle[properties.size()];
+			for (int j = 0 ; j < properties.size() ; j ++) {
+				accessors[j] = getAccessor(dataClazz, properties.get(j));
+			}
 			
 			for (int i = 0 ; i < objList.size() ; i ++) {
-				rowData = new ArrayList<Object>();
+				rowData = new ArrayList<Object>(accessors.length);
 				
-				for (int j = 0 ; j < properties.size() ; j ++) {
-					rowData.add(getProperty(propertyMethodMap, 
-							dataClazz, objList.get(i), properties.get(j)));
+				for (int j = 0 ; j < accessors.length ; j ++) {
+					rowData.add(getProperty(accessors[j], objList.get(i)));
 				}
 				
 				data.add(rowData);
@@ -75,36 +98,69 @@ public class CollectionASCIITableAware<T> implements IASCIITableAware {
 		}
 	}
 
-	private Object getProperty(Map<String, Method> propertyMethodMap, Class<?> dataClazz, T obj, String property) {
+	private Object getProperty(MethodHandle accessor, T obj) {
 		Object cellValue = null;
 		
 		try {
-			Method method = null;
+			cellValue = (Object) accessor.invokeExact((Object) obj);
+		} catch (Throwable e) {
+			//System.out.println("Unable to get cell content : " + e);
+		}
+		return cellValue;
+	}
+	
+	/**
+	 * Returns the handle of the getter of a property, taking 
+	 * the object and returning the value boxed.
+	 */
+	private static MethodHandle getAccessor(Class<?> dataClazz, String property) {
+		ConcurrentMap<String, MethodHandle> classAccessors = ACCESSORS.get(dataClazz);
+		MethodHandle accessor = classAccessors.get(property);
+		
+		if (accessor == null) {
+			Method method = getMethod(dataClazz, "get" + capitalize(property));
+			if (method == null) {
+				method = getMethod(dataClazz, "is" + capitalize(property));
+			}
 			
-			if (propertyMethodMap.containsKey(property)) {
-				method = propertyMethodMap.get(property);
+			if (method == null) {
+				accessor = MISSING;
 			} else {
-				String methodName = "get" + capitalize(property);
-				method = getMethod(dataClazz, methodName);
-				
-				if (method == null) {
-					methodName = "is" + capitalize(property);
-					method = getMethod(dataClazz, methodName);
-				}
-				
-				if (method != null) {
-					propertyMethodMap.put(property, method);
+				accessor = unreflect(method);
+				if (accessor == null) {
+					//Not cached, the getter exists but can't be called from here
+					return MISSING;
 				}
 			}
-			cellValue = method.invoke(obj, new Object [] {});
-			
-		} catch (Exception e) {
-			//System.out.println("Unable to get cell content : " + e);
+			classAccessors.putIfAbsent(property, accessor);
 		}
-		return cellValue;
+		return accessor;
+	}
+	
+	/**
+	 * Returns a handle on a getter, made accessible if it is declared 
+	 * by a class that isn't public, or null if it can't be.
+	 */
+	private static MethodHandle unreflect(Method method) {
+		MethodHandle handle = null;
+		try {
+			handle = MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			try {
+				method.setAccessible(true);
+				handle = MethodHandles.lookup().unreflect(method);
+			} catch (IllegalAccessException | RuntimeException e2) {
+				return null;
+			}
+		}
+		
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle.asType(MethodType.methodType(Object.class, Object.class));
 	}
 	
-	private Method getMethod(Class<?> dataClazz, String methodName) {
+	private static Method getMethod(Class<?> dataClazz, String methodName) {
 		Method method = null;
 		try {
 			method = dataClazz.getMethod(methodName, new Class<?>[] {});
@@ -113,7 +169,7 @@ public class CollectionASCIITableAware<T> implements IASCIITableAware {
 		return method;
 	}
 	
-	private String capitalize(String property) {
+	private static String capitalize(String property) {
 		return property.length() == 0 ? property : 
 			property.substring(0, 1).toUpperCase() + property.substring(1).toLowerCase();
 	}
@@ -15,10 +15,12 @@
  */
 package com.bethecoder.ascii_table.impl;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 
+import com.bethecoder.ascii_table.ASCIITableCell;
 import com.bethecoder.ascii_table.ASCIITableHeader;
 import com.bethecoder.ascii_table.spec.IASCIITable;
 import com.bethecoder.ascii_table.spec.IASCIITableAware;
@@ -37,6 +39,12 @@ import com.bethecoder.ascii_table.spec.IASCIITableAware;
  */
 public class SimpleASCIITableImpl implements IASCIITable {
 
+	/**
+	 * Spaces padding the cells written one by one, grown when a wider cell comes.
+	 * Never modified once published, so it can be shared by several threads.
+	 */
+	private volatile char[] cellSpaces = new char[0];
+
 	@Override
 	public void printTable(String[] header, String[][] data) {
 		printTable(header, DEFAULT_HEADER_ALIGN, data, DEFAULT_DATA_ALIGN);
@@ -75,14 +83,46 @@ public class SimpleASCIITableImpl implements IASCIITable {
 		return getTable(headerObjs, data);
 	}
 	
-	public void printTable(ASCIITableHeader[] headerObjs, String[][] data) {
-		System.out.println(getTable(headerObjs, data));
+	public void printTable(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
+		try {
+			writeTable(headerObjs, data, System.out);
+		} catch (IOException e) {
+			//Never thrown, System.out sets its error flag instead.
+		}
+		System.out.println();
 	}
 	
 	@Override
 	public String getTable(IASCIITableAware asciiTableAware) {
-		
+		ASCIITableHeader[] headerObjs = getHeaders(asciiTableAware);
+		return getTable(headerObjs, getData(asciiTableAware, headerObjs));
+	}
+	
+	@Override
+	public void writeTable(IASCIITableAware asciiTableAware, Appendable out) throws IOException {
+		ASCIITableHeader[] headerObjs = getHeaders(asciiTableAware);
+		writeTable(headerObjs, getData(asciiTableAware, headerObjs), out);
+	}
+	
+	private ASCIITableHeader[] getHeaders(IASCIITableAware asciiTableAware) {
 		ASCIITableHeader[] headerObjs = new ASCIITableHeader[0];
+		
+		if (asciiTableAware != null && asciiTableAware.getHeaders()!= null && 
+				!asciiTableAware.getHeaders().isEmpty()) {
+			headerObjs = new ASCIITableHeader[asciiTableAware.getHeaders().size()];
+			for (int i = 0 ; i < asciiTableAware.getHeaders().size() ; i ++) {
+				headerObjs[i] = asciiTableAware.getHeaders().get(i);
+			}
+		}
+		
+		return headerObjs;
+	}
+	
+	/**
+	 * Formats the cells of the data.
+	 */
+	private String[][] getData(IASCIITableAware asciiTableAware, ASCIITableHeader[] headerObjs) {
+		
 		String[][] data = new String[0][0];
 
 		List<Object> rowData = null;
@@ -94,17 +134,6 @@ public class SimpleASCIITableImpl implements IASCIITable {
 		
 		if (asciiTableAware != null) {
 			
-			/**
-			 * Get the row header.
-			 */
-			if (asciiTableAware.getHeaders()!= null && 
-					!asciiTableAware.getHeaders().isEmpty()) {
-				headerObjs = new ASCIITableHeader[asciiTableAware.getHeaders().size()];
-				for (int i = 0 ; i < asciiTableAware.getHeaders().size() ; i ++) {
-					headerObjs[i] = asciiTableAware.getHeaders().get(i);
-				}
-			}
-			
 			/**
 			 * Get the data.
 			 */
@@ -142,24 +171,41 @@ public class SimpleASCIITableImpl implements IASCIITable {
 			}//end data
 		}
 		
-		return getTable(headerObjs, data);
+		return data;
 	}
 
 	@Override
 	public void printTable(IASCIITableAware asciiTableAware) {
-		System.out.println(getTable(asciiTableAware));
+		try {
+			writeTable(asciiTableAware, System.out);
+		} catch (IOException e) {
+			//Never thrown, System.out sets its error flag instead.
+		}
+		System.out.println();
 	}
 	
-	public String getTable(ASCIITableHeader[] headerObjs, String[][] data) {
-	
-		if (data == null || data.length == 0) {
-			throw new IllegalArgumentException("Please provide valid data : " + data);
-		}
+	public String getTable(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
 		
 		/**
 		 * Table String buffer
 		 */
 		StringBuilder tableBuf = new StringBuilder();
+		try {
+			writeTable(headerObjs, data, tableBuf);
+		} catch (IOException e) {
+			//A StringBuilder never throws.
+			throw new IllegalStateException(e);
+		}
+		
+		return tableBuf.toString();
+	}
+	
+	@Override
+	public void writeTable(ASCIITableHeader[] headerObjs, CharSequence[][] data, Appendable out) throws IOException {
+	
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("Please provide valid data : " + data);
+		}
 		
 		/**
 		 * Get maximum number of columns across all rows
@@ -170,114 +216,151 @@ public class SimpleASCIITableImpl implements IASCIITable {
 		/**
 		 * Get max length of data in each column
 		 */
-		List<Integer> colMaxLenList = getMaxColLengths(colCount, header, data);
+		int[] colMaxLen = getMaxColLengths(colCount, header, data);
+		
+		/**
+		 * Get the alignment of each column
+		 */
+		int[] headerAlign = new int[colCount];
+		int[] dataAlign = new int[colCount];
+		for (int i = 0 ; i < colCount ; i ++) {
+			boolean hasHeader = headerObjs != null && i < headerObjs.length;
+			headerAlign[i] = hasHeader ? headerObjs[i].getHeaderAlign() : DEFAULT_HEADER_ALIGN;
+			dataAlign[i] = hasHeader ? headerObjs[i].getDataAlign() : DEFAULT_DATA_ALIGN;
+		}
+		
+		/**
+		 * The row line is the same everywhere, and every cell is padded from the same spaces
+		 */
+		char[] rowLine = getRowLine(colCount, colMaxLen);
+		char[] spaces = getSpaces(colMaxLen);
+		
+		/**
+		 * Rows are built in a single buffer, written to the output once complete.
+		 * A StringBuilder output is used as the buffer directly.
+		 */
+		boolean direct = out instanceof StringBuilder;
+		StringBuilder rowBuf;
+		if (direct) {
+			rowBuf = (StringBuilder) out;
+			rowBuf.ensureCapacity(rowBuf.length() + rowLine.length * (data.length + 4));
+		} else {
+			rowBuf = new StringBuilder(rowLine.length);
+		}
 		
 		/**
 		 * Check for the existence of header
 		 */
-		if (header != null && header.length > 0) {
+		if (header.length > 0) {
 			/**
 			 * 1. Row line
 			 */
-			tableBuf.append(getRowLineBuf(colCount, colMaxLenList, data));
+			rowBuf.append(rowLine);
 			
 			/**
 			 * 2. Header line
 			 */
-			tableBuf.append(getRowDataBuf(colCount, colMaxLenList, header, headerObjs, true));
+			appendRowData(rowBuf, colCount, colMaxLen, header, headerAlign, spaces);
 		}
 		
 		/**
-		 * 3. Data Row lines
+		 * 3. Data Row lines, missing cells being rendered empty
 		 */
-		tableBuf.append(getRowLineBuf(colCount, colMaxLenList, data));
-		String [] rowData = null;
-		
-		//Build row data buffer by iterating through all rows
+		rowBuf.append(rowLine);
 		for (int i = 0 ; i < data.length ; i++) {
+			appendRowData(rowBuf, colCount, colMaxLen, data[i], dataAlign, spaces);
 			
-			//Build cell data in each row
-			rowData = new String [colCount];
-			for (int j = 0 ; j < colCount ; j++) {
-				
-				if (j < data[i].length) {
-					rowData[j] = data[i][j];	
-				} else {
-					rowData[j] = "";
-				}
+			if (!direct) {
+				out.append(rowBuf);
+				rowBuf.setLength(0);
 			}
-			
-			tableBuf.append(getRowDataBuf(colCount, colMaxLenList, rowData, headerObjs, false));
 		}
 		
 		/**
 		 * 4. Row line
 		 */
-		tableBuf.append(getRowLineBuf(colCount, colMaxLenList, data));
-		return tableBuf.toString();
+		rowBuf.append(rowLine);
+		if (!direct) {
+			out.append(rowBuf);
+		}
+	}
+	
+	@Override
+	public int[] getColumnWidths(ASCIITableHeader[] headerObjs, CharSequence[][] data) {
+		String [] header = getHeaders(headerObjs);
+		return getMaxColLengths(getMaxColumns(header, data), header, data);
 	}
 	
-	private String getRowDataBuf(int colCount, List<Integer> colMaxLenList, 
-			String[] row, ASCIITableHeader[] headerObjs, boolean isHeader) {
+	@Override
+	public void writeCell(CharSequence cell, int width, int align, Appendable out) throws IOException {
+		char[] spaces = cellSpaces;
+		if (spaces.length < width) {
+			spaces = new char[Math.max(width, spaces.length * 2)];
+			Arrays.fill(spaces, ' ');
+			cellSpaces = spaces;
+		}
 		
-		StringBuilder rowBuilder = new StringBuilder();
-		String formattedData = null;
-		int align;
+		StringBuilder cellBuf = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder(width);
+		appendPaddedCell(cellBuf, cell, width, align, spaces);
+		if (cellBuf != out) {
+			out.append(cellBuf);
+		}
+	}
+	
+	/**
+	 * Appends a row, each cell being padded to its column's width with the given alignment.
+	 * Nothing is allocated: the padding is taken from an array of spaces.
+	 */
+	private void appendRowData(StringBuilder rowBuf, int colCount, int[] colMaxLen, 
+			CharSequence[] row, int[] align, char[] spaces) {
 		
 		for (int i = 0 ; i < colCount ; i ++) {
-		
-			align = isHeader ? DEFAULT_HEADER_ALIGN : DEFAULT_DATA_ALIGN;
-			
-			if (headerObjs != null && i < headerObjs.length) {
-				if (isHeader) {
-					align = headerObjs[i].getHeaderAlign();
-				} else {
-					align = headerObjs[i].getDataAlign();
-				}
-			}
-				 
-			formattedData = i < row.length ? row[i] : ""; 
-			
-			//format = "| %" + colFormat.get(i) + "s ";
-			formattedData = "| " + 
-				getFormattedData(colMaxLenList.get(i), formattedData, align) + " ";
-			
-			if (i+1 == colCount) {
-				formattedData += "|";
-			}
-			
-			rowBuilder.append(formattedData);
+			rowBuf.append('|').append(' ');
+			appendPaddedCell(rowBuf, i < row.length ? row[i] : "", colMaxLen[i], align[i], spaces);
+			rowBuf.append(' ');
 		}
 		
-		return rowBuilder.append("\n").toString();
+		if (colCount > 0) {
+			rowBuf.append('|');
+		}
+		rowBuf.append('\n');
 	}
 	
-	private String getFormattedData(int maxLength, String data, int align) {
+	/**
+	 * Appends a cell padded to the given width, the spaces holding at least that many.
+	 */
+	private void appendPaddedCell(StringBuilder rowBuf, CharSequence cell, int width, int align, char[] spaces) {
+		int padding = width - cell.length();
+		int left;
 		
-		if (data.length() > maxLength) {
-			return data;
+		if (padding <= 0) {
+			appendCell(rowBuf, cell);
+		} else if (align == ALIGN_LEFT) {
+			appendCell(rowBuf, cell);
+			rowBuf.append(spaces, 0, padding);
+		} else if (align == ALIGN_RIGHT) {
+			rowBuf.append(spaces, 0, padding);
+			appendCell(rowBuf, cell);
+		} else if (align == ALIGN_CENTER) {
+			//The extra space of an odd padding goes to the left
+			left = (padding + 1) / 2;
+			rowBuf.append(spaces, 0, left);
+			appendCell(rowBuf, cell);
+			rowBuf.append(spaces, 0, padding - left);
+		} else {
+			appendCell(rowBuf, cell);
 		}
-		
-		boolean toggle = true;
-		
-		while (data.length() < maxLength) {
-			
-			if (align == ALIGN_LEFT) {
-				data = data + " ";
-			} else if (align == ALIGN_RIGHT) {
-				data = " " + data;
-			} else if (align == ALIGN_CENTER) {
-				if (toggle) {
-					data = " " + data;
-					toggle = false;
-				} else {
-					data = data + " ";
-					toggle = true;
-				}
-			}
+	}
+	
+	/**
+	 * Appends a cell's content, surrounded by its style if it has one.
+	 */
+	private void appendCell(StringBuilder rowBuf, CharSequence cell) {
+		if (cell instanceof ASCIITableCell) {
+			((ASCIITableCell) cell).appendTo(rowBuf);
+		} else {
+			rowBuf.append(cell);
 		}
-		
-		return data;
 	}
 	
 	/**
@@ -288,42 +371,46 @@ public class SimpleASCIITableImpl implements IASCIITable {
 	 *   abc      venkat     last
 	 * 
 	 * @param colCount
-	 * @param colMaxLenList
-	 * @param data
+	 * @param colMaxLen
 	 * @return
 	 */
-	private String getRowLineBuf(int colCount, List<Integer> colMaxLenList, String[][] data) {
+	private char[] getRowLine(int colCount, int[] colMaxLen) {
+		
+		int length = colCount > 0 ? 2 : 1;
+		for (int i = 0 ; i < colCount ; i ++) {
+			length += colMaxLen[i] + 3;
+		}
 		
-		StringBuilder rowBuilder = new StringBuilder();
-		int colWidth = 0 ;
+		char[] rowLine = new char[length];
+		Arrays.fill(rowLine, '-');
 		
+		int position = 0;
 		for (int i = 0 ; i < colCount ; i ++) {
-			
-			colWidth = colMaxLenList.get(i) + 3;
-			
-			for (int j = 0; j < colWidth ; j ++) {
-				if (j==0) {
-					rowBuilder.append("+");
-				} else if ((i+1 == colCount && j+1 == colWidth)) {//for last column close the border
-					rowBuilder.append("-+");
-				} else {
-					rowBuilder.append("-");
-				}
-			}
+			rowLine[position] = '+';
+			position += colMaxLen[i] + 3;
+		}
+		
+		if (colCount > 0) {
+			//close the border
+			rowLine[position] = '+';
 		}
+		rowLine[length - 1] = '\n';
 		
-		return rowBuilder.append("\n").toString();
+		return rowLine;
 	}
 	
-	private int getMaxItemLength(List<String> colData) {
+	private char[] getSpaces(int[] colMaxLen) {
 		int maxLength = 0;
-		for (int i = 0 ; i < colData.size() ; i ++) {
-			maxLength = Math.max(colData.get(i).length(), maxLength);
+		for (int i = 0 ; i < colMaxLen.length ; i ++) {
+			maxLength = Math.max(colMaxLen[i], maxLength);
 		}
-		return maxLength;
+		
+		char[] spaces = new char[maxLength];
+		Arrays.fill(spaces, ' ');
+		return spaces;
 	}
 
-	private int getMaxColumns(String [] header, String[][] data) {
+	private int getMaxColumns(String [] header, CharSequence[][] data) {
 		int maxColumns = 0;
 		for (int i = 0; i < data.length; i++) {
 			maxColumns = Math.max(data[i].length, maxColumns);
@@ -332,32 +419,27 @@ public class SimpleASCIITableImpl implements IASCIITable {
 		return maxColumns;
 	}
 	
-	private List<Integer> getMaxColLengths(int colCount, String[] header, String[][] data) {
+	/**
+	 * Computes the width of every column in a single pass over the rows.
+	 * Styled cells only count their content.
+	 */
+	private int[] getMaxColLengths(int colCount, String[] header, CharSequence[][] data) {
 
-		List<Integer> colMaxLenList = new ArrayList<Integer>(colCount);
-		List<String> colData = null;
-		int maxLength;
+		int[] colMaxLen = new int[colCount];
 		
-		for (int i = 0 ; i < colCount ; i ++) {
-			colData = new ArrayList<String>();
-			
-			if (header != null && i < header.length) {
-				colData.add(header[i]);
+		if (header != null) {
+			for (int i = 0 ; i < header.length ; i ++) {
+				colMaxLen[i] = header[i].length();
 			}
-			
-			for (int j = 0 ; j < data.length; j ++) {
-				if (i < data[j].length) {
-					colData.add(data[j][i]);	
-				} else {
-					colData.add("");
-				}
+		}
+		
+		for (int j = 0 ; j < data.length; j ++) {
+			for (int i = 0 ; i < data[j].length ; i ++) {
+				colMaxLen[i] = Math.max(data[j][i].length(), colMaxLen[i]);
 			}
-			
-			maxLength = getMaxItemLength(colData);
-			colMaxLenList.add(maxLength);
 		}
 		
-		return colMaxLenList;
+		return colMaxLen;
 	}
 	
 	private String [] getHeaders(ASCIITableHeader[] headerObjs) {
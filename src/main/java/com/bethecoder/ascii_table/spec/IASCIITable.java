@@ -15,6 +15,8 @@
  */
 package com.bethecoder.ascii_table.spec;
 
+import java.io.IOException;
+
 import com.bethecoder.ascii_table.ASCIITableHeader;
 
 /**
@@ -42,11 +44,13 @@ public interface IASCIITable {
 	public void printTable(String[] header, String[][] data);
 	public void printTable(String[] header, String[][] data, int dataAlign);
 	public void printTable(String[] header, int headerAlign, String[][] data, int dataAlign);
-	public void printTable(ASCIITableHeader[] headerObjs, String[][] data);
+	public void printTable(ASCIITableHeader[] headerObjs, CharSequence[][] data);
 	public void printTable(IASCIITableAware asciiTableAware);
 	
 	/**
 	 * Returns the ASCII table as string which can be rendered in console or JSP.
+	 * The data can contain {@link com.bethecoder.ascii_table.ASCIITableCell}s
+	 * to style some cells.
 	 * 
 	 * @param header
 	 * @param data
@@ -55,7 +59,41 @@ public interface IASCIITable {
 	public String getTable(String[] header, String[][] data);
 	public String getTable(String[] header, String[][] data, int dataAlign);
 	public String getTable(String[] header, int headerAlign, String[][] data, int dataAlign);
-	public String getTable(ASCIITableHeader[] headerObjs, String[][] data);
+	public String getTable(ASCIITableHeader[] headerObjs, CharSequence[][] data);
 	public String getTable(IASCIITableAware asciiTableAware);
 	
+	/**
+	 * Writes the ASCII table to an output row by row, once the column widths are known,
+	 * without building it in memory first.
+	 * 
+	 * @param headerObjs
+	 * @param data
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTable(ASCIITableHeader[] headerObjs, CharSequence[][] data, Appendable out) throws IOException;
+	public void writeTable(IASCIITableAware asciiTableAware, Appendable out) throws IOException;
+	
+	/**
+	 * Returns the width of each column of the table, the borders and 
+	 * the spaces around the cells excluded.
+	 * 
+	 * @param headerObjs
+	 * @param data
+	 * @return
+	 */
+	public int[] getColumnWidths(ASCIITableHeader[] headerObjs, CharSequence[][] data);
+	
+	/**
+	 * Writes a data cell padded to its column's width, exactly as it appears 
+	 * in a table, so that a rendered table can be updated cell by cell.
+	 * 
+	 * @param cell
+	 * @param width
+	 * @param align
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeCell(CharSequence cell, int width, int align, Appendable out) throws IOException;
+	
 }
@@ -0,0 +1,52 @@
+package com.dindane.futbinwatcher;
+
+import java.text.DecimalFormat;
+import java.util.Date;
+
+/**
+ * A rule that fired, with the price that made it fire.
+ */
+public class Alert {
+    private final AlertRule rule;
+    private final String playerName;
+    private final Long lowestBIN;
+    private final Long timestamp;
+
+    public Alert(AlertRule rule, String playerName, Long lowestBIN, Long timestamp) {
+        this.rule = rule;
+        this.playerName = playerName;
+        this.lowestBIN = lowestBIN;
+        this.timestamp = timestamp;
+    }
+
+    public AlertRule getRule() {
+        return rule;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public Long getLowestBIN() {
+        return lowestBIN;
+    }
+
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns a one line, human readable description of the alert.
+     */
+    public String getMessage() {
+        DecimalFormat format = new DecimalFormat("#,###");
+        return String.format("%s %s: %s lowest BIN %s is %s %s.", rule.getDescription(), playerName, rule.getMarket(),
+                format.format(lowestBIN), (rule.getDirection() == AlertRule.Direction.BELOW) ? "below" : "above",
+                format.format(rule.getThreshold()));
+    }
+
+    @Override
+    public String toString() {
+        return new Date(timestamp) + " " + getMessage();
+    }
+}
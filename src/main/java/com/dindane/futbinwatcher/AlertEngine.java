@@ -0,0 +1,251 @@
+package com.dindane.futbinwatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates alert rules against the prices that moved and sends the alerts that fired to the sinks.
+ *
+ * The rules of every player and market are indexed by threshold. When a price moves from one value
+ * to another, only the rules whose threshold, or re-arming level, lies between the two values can
+ * change state, and they are found with a range query instead of checking every rule.
+ *
+ * The alerts are sent to the sinks one at a time by a background thread, so a slow or stuck sink
+ * doesn't hold the refreshes up. At most {@link #MAX_PENDING_ALERTS} alerts wait to be sent, the ones
+ * above being reported as failures.
+ */
+public class AlertEngine {
+    public static final Double DEFAULT_HYSTERESIS = 0.02;
+    static final Integer MAX_PENDING_ALERTS = 1000;
+
+    private final Double hysteresis;
+    private final Map<String, Map<Platform, RuleIndex>> indexes = new HashMap<>();
+    private final List<AlertSink> sinks = new ArrayList<>();
+    private List<String> lastFailures = Collections.emptyList();
+    /**
+     * Failures reported by the delivery thread since the last call to process.
+     */
+    private final List<String> deliveryFailures = new ArrayList<>();
+    private final ThreadPoolExecutor delivery = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_PENDING_ALERTS), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "futbin-alert-delivery");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * @param hysteresis how far beyond its threshold, relatively, a price must go back before a rule fires again
+     */
+    public AlertEngine(Double hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1) throw new IllegalArgumentException("The hysteresis must be between 0 and 1.");
+
+        this.hysteresis = hysteresis;
+    }
+
+    public synchronized void addRule(AlertRule rule) {
+        Map<Platform, RuleIndex> markets = indexes.get(rule.getPlayerId());
+        if (markets == null) {
+            markets = new EnumMap<>(Platform.class);
+            indexes.put(rule.getPlayerId(), markets);
+        }
+
+        RuleIndex index = markets.get(rule.getMarket());
+        if (index == null) {
+            index = new RuleIndex();
+            markets.put(rule.getMarket(), index);
+        }
+
+        index.add(rule);
+    }
+
+    public synchronized void removeRule(AlertRule rule) {
+        Map<Platform, RuleIndex> markets = indexes.get(rule.getPlayerId());
+        RuleIndex index = (markets == null) ? null : markets.get(rule.getMarket());
+        if (index == null) return;
+
+        index.remove(rule);
+        if (index.isEmpty()) markets.remove(rule.getMarket());
+        if (markets.isEmpty()) indexes.remove(rule.getPlayerId());
+    }
+
+    public synchronized void addSink(AlertSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Evaluates the rules of the players that appeared or changed in a snapshot, queues the fired alerts
+     * to be sent to every sink and returns them.
+     */
+    public synchronized List<Alert> process(PriceSnapshot snapshot, PriceDelta delta) {
+        List<Alert> alerts = new ArrayList<>();
+        Long now = System.currentTimeMillis();
+
+        for (int[] slots : new int[][]{delta.getAppeared(), delta.getChanged()}) {
+            for (int slot : slots) {
+                Map<Platform, RuleIndex> markets = indexes.get(snapshot.getLine(slot).getPlayerId());
+                if (markets == null || snapshot.isStale(slot)) continue;
+
+                for (Integer market = 0; market < snapshot.getMarkets().size(); market++) {
+                    RuleIndex index = markets.get(snapshot.getMarkets().get(market));
+                    long price = snapshot.getLowestBIN(slot, market);
+                    if (index == null || price == PriceSnapshot.UNKNOWN) continue;
+
+                    for (AlertRule rule : index.update(price)) alerts.add(new Alert(rule, snapshot.getName(slot), price, now));
+                }
+            }
+        }
+
+        List<String> failures;
+        synchronized (deliveryFailures) {
+            for (Alert alert : alerts) {
+                try {
+                    delivery.execute(deliver(alert, new ArrayList<>(sinks)));
+                } catch (RejectedExecutionException e) {
+                    deliveryFailures.add(String.format("Could not send the alert \"%s\": %d alerts are already waiting to be sent.",
+                            alert.getMessage(), MAX_PENDING_ALERTS));
+                }
+            }
+
+            failures = new ArrayList<>(deliveryFailures);
+            deliveryFailures.clear();
+        }
+        lastFailures = Collections.unmodifiableList(failures);
+
+        return alerts;
+    }
+
+    private Runnable deliver(final Alert alert, final List<AlertSink> sinks) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (AlertSink sink : sinks) {
+                    try {
+                        sink.send(alert);
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (deliveryFailures) {
+                            deliveryFailures.add(String.format("Could not send the alert \"%s\": %s", alert.getMessage(),
+                                    (e.getMessage() == null) ? e.toString() : e.getMessage()));
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a description of every alert that could not be sent, reported since the previous call to process.
+     */
+    public synchronized List<String> getFailures() {
+        return lastFailures;
+    }
+
+    /**
+     * Rules of a player on a market, by threshold, along with the last price seen.
+     */
+    private class RuleIndex {
+        private final TreeMap<Double, List<AlertRule>> below = new TreeMap<>();
+        private final TreeMap<Double, List<AlertRule>> above = new TreeMap<>();
+        private Long lastPrice;
+        /**
+         * Rules added since the last price, checked against the next one.
+         */
+        private final List<AlertRule> added = new ArrayList<>(0);
+
+        void add(AlertRule rule) {
+            TreeMap<Double, List<AlertRule>> rules = (rule.getDirection() == AlertRule.Direction.BELOW) ? below : above;
+            List<AlertRule> sameThreshold = rules.get(rule.getThreshold());
+            if (sameThreshold == null) {
+                sameThreshold = new ArrayList<>(1);
+                rules.put(rule.getThreshold(), sameThreshold);
+            }
+            sameThreshold.add(rule);
+
+            // Evaluated against the current price the next time it moves, the other rules keeping their state.
+            if (lastPrice != null) added.add(rule);
+        }
+
+        void remove(AlertRule rule) {
+            TreeMap<Double, List<AlertRule>> rules = (rule.getDirection() == AlertRule.Direction.BELOW) ? below : above;
+            List<AlertRule> sameThreshold = rules.get(rule.getThreshold());
+            if (sameThreshold == null) return;
+
+            sameThreshold.remove(rule);
+            if (sameThreshold.isEmpty()) rules.remove(rule.getThreshold());
+            added.remove(rule);
+        }
+
+        Boolean isEmpty() {
+            return below.isEmpty() && above.isEmpty();
+        }
+
+        /**
+         * Moves the price, re-arms the rules it went back past and returns the rules that fired.
+         */
+        List<AlertRule> update(long price) {
+            List<AlertRule> fired = new ArrayList<>();
+            Long previous = lastPrice;
+            lastPrice = price;
+
+            // Like on a first price, the rules added since the last one fire if they are already past their threshold.
+            for (AlertRule rule : added) {
+                Boolean past = (rule.getDirection() == AlertRule.Direction.BELOW) ? price < rule.getThreshold() : price > rule.getThreshold();
+                if (past && rule.isArmed()) {
+                    rule.setArmed(false);
+                    fired.add(rule);
+                }
+            }
+            added.clear();
+
+            if (previous == null) {
+                // First price: every rule already past its threshold fires.
+                collect(below.tailMap((double) price, false), fired);
+                collect(above.headMap((double) price, false), fired);
+                return fired;
+            }
+            if (price == previous) return fired;
+
+            if (price < previous) {
+                // Below rules crossed downwards fire, above rules whose re-arming level was crossed are armed.
+                collect(below.subMap((double) price, false, (double) previous, true), fired);
+                rearm(above.subMap(price / (1 - hysteresis), true, previous / (1 - hysteresis), false));
+            } else {
+                collect(above.subMap((double) previous, true, (double) price, false), fired);
+                rearm(below.subMap(previous / (1 + hysteresis), false, price / (1 + hysteresis), true));
+            }
+
+            return fired;
+        }
+
+        private void collect(NavigableMap<Double, List<AlertRule>> crossed, List<AlertRule> fired) {
+            for (List<AlertRule> rules : crossed.values()) {
+                for (AlertRule rule : rules) {
+                    if (!rule.isArmed()) continue;
+
+                    rule.setArmed(false);
+                    fired.add(rule);
+                }
+            }
+        }
+
+        private void rearm(NavigableMap<Double, List<AlertRule>> crossed) {
+            for (List<AlertRule> rules : crossed.values()) {
+                for (AlertRule rule : rules) rule.setArmed(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+/**
+ * A price level of a player on a market which, once crossed, triggers an alert.
+ *
+ * A rule fires once when the price crosses its threshold, and is armed again only after the price
+ * went back beyond the threshold by the engine's hysteresis, so a price hovering around the threshold
+ * doesn't repeat the alert.
+ */
+public class AlertRule {
+    public enum Direction {
+        /**
+         * Fires when the lowest BIN drops below the threshold.
+         */
+        BELOW,
+        /**
+         * Fires when the lowest BIN rises above the threshold.
+         */
+        ABOVE
+    }
+
+    private final String playerId;
+    private final Platform market;
+    private final Direction direction;
+    private final Double threshold;
+    private final String description;
+    private Boolean armed = true;
+
+    public AlertRule(String playerId, Platform market, Direction direction, Double threshold, String description) {
+        this.playerId = playerId;
+        this.market = market;
+        this.direction = direction;
+        this.threshold = threshold;
+        this.description = description;
+    }
+
+    /**
+     * Returns the rule of a watch list line: a buy fires when the lowest BIN drops below the target,
+     * a sale when the lowest BIN minus the 5% tax rises above it.
+     */
+    public static AlertRule of(ParsedLine line, Platform market) {
+        if (line.getAction() == Action.BUY) {
+            return new AlertRule(line.getPlayerId(), market, Direction.BELOW, (double) line.getTargetPrice(), "BUY");
+        } else {
+            return new AlertRule(line.getPlayerId(), market, Direction.ABOVE, line.getTargetPrice() / 0.95, "SELL");
+        }
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public Platform getMarket() {
+        return market;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public Double getThreshold() {
+        return threshold;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    Boolean isArmed() {
+        return armed;
+    }
+
+    void setArmed(Boolean armed) {
+        this.armed = armed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AlertRule{playerId=%s, market=%s, direction=%s, threshold=%s, description=%s}",
+                playerId, market, direction, threshold, description);
+    }
+}
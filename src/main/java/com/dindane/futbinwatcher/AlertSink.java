@@ -0,0 +1,10 @@
+package com.dindane.futbinwatcher;
+
+import java.io.IOException;
+
+/**
+ * Where the alerts fired by an {@link AlertEngine} are sent.
+ */
+public interface AlertSink {
+    void send(Alert alert) throws IOException;
+}
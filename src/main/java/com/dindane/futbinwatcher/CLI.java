@@ -1,6 +1,7 @@
 package com.dindane.futbinwatcher;
 
 import com.bethecoder.ascii_table.ASCIITable;
+import com.bethecoder.ascii_table.ASCIITableCell;
 import com.bethecoder.ascii_table.ASCIITableHeader;
 import com.dindane.futbinwatcher.exceptions.Action;
 import com.dindane.futbinwatcher.exceptions.IdParsingException;
@@ -12,20 +13,31 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 class CLI {
     @Option(name = "--platform",
-            required = true, usage = "The market's platform.")
+            required = true, usage = "The market's platform: XBOX, PS, or ALL for both.")
     private Platform platform;
 
     @Option(name = "--players-list",
@@ -33,9 +45,83 @@ class CLI {
     private String playersListFileName;
 
     @Option(name = "--refresh-delay",
-            required = false, usage = "Refresh delay. Must be higher than 2.")
+            required = false, usage = "Refresh delay in minutes. Must be higher than 2. " +
+                    "Players close to their target or whose price moves a lot are refreshed at this delay, " +
+                    "quiet players up to 4 times less often.")
     private Integer refreshDelay = 2;
 
+    @Option(name = "--max-attempts", required = false, usage = "Number of times a player's page is requested before giving up.")
+    private Integer maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+
+    @Option(name = "--connect-timeout", required = false, usage = "Connection timeout in seconds.")
+    private Integer connectTimeout = HttpTransport.DEFAULT_CONNECT_TIMEOUT / 1000;
+
+    @Option(name = "--read-timeout", required = false, usage = "Read timeout in seconds.")
+    private Integer readTimeout = HttpTransport.DEFAULT_READ_TIMEOUT / 1000;
+
+    @Option(name = "--extractor", required = false, usage = "How the pages are read: STREAMING or DOM.")
+    private ExtractionMode extractionMode = ExtractionMode.STREAMING;
+
+    @Option(name = "--cache-dir", required = false, usage = "Directory where fetched prices are cached between runs.")
+    private String cacheDirectory;
+
+    @Option(name = "--cache-ttl", required = false, usage = "Number of seconds during which a cached price is used without asking FutBIN.")
+    private Integer cacheTTL = 60;
+
+    @Option(name = "--base-url", required = false, usage = "Fetch the pages from this server instead of FutBIN, e.g. a replay server.")
+    private String baseUrl;
+
+    @Option(name = "--record-dir", required = false, usage = "Save every downloaded page in this directory.")
+    private String recordDirectory;
+
+    @Option(name = "--history-dir", required = false, usage = "Directory where every fetched price is kept.")
+    private String historyDirectory;
+
+    @Option(name = "--alert-file", required = false, usage = "Append the buy and sell alerts to this file.")
+    private String alertFile;
+
+    @Option(name = "--alert-command", required = false, usage = "Run this command for every alert, with the alert's message as last argument.")
+    private String alertCommand;
+
+    @Option(name = "--alert-webhook", required = false, usage = "POST every alert as JSON to this URL.")
+    private String alertWebhook;
+
+    @Option(name = "--alert-rules", required = false, usage = "File of additional alerts, one per line: \"below link price\" or \"above link price\".")
+    private String alertRulesFileName;
+
+    @Option(name = "--alert-hysteresis", required = false, usage = "Percentage by which a price must move back past a threshold before its alert is sent again.")
+    private Double alertHysteresis = AlertEngine.DEFAULT_HYSTERESIS * 100;
+
+    @Option(name = "--shard-dir", required = false, usage = "Directory shared by several instances watching the same players list, " +
+            "each one refreshing a part of the players.")
+    private String shardDirectory;
+
+    @Option(name = "--shard-id", required = false, usage = "Name of this instance among the ones sharing the shard directory. " +
+            "Defaults to the host name and process id.")
+    private String shardId;
+
+    @Option(name = "--format", required = false, usage = "Output format: TABLE, or CSV or JSONL to write a record per refreshed player " +
+            "on the standard output, the other messages going to the standard error.")
+    private OutputFormat outputFormat = OutputFormat.TABLE;
+
+    @Option(name = "--daemon", required = false, usage = "Run without displaying the tables, the prices being served over HTTP.")
+    private Boolean daemon = false;
+
+    @Option(name = "--http-port", required = false, usage = "Serve the latest prices as JSON on this port. " +
+            "Defaults to 8080 in daemon mode.")
+    private Integer httpPort;
+
+    @Option(name = "--http-host", required = false, usage = "Address the JSON server listens on.")
+    private String httpHost = "127.0.0.1";
+
+    @Option(name = "--metrics-file", required = false, usage = "Write the metrics in the Prometheus text format to this file after every refresh. " +
+            "They are also served on /metrics by the JSON server.")
+    private String metricsFileName;
+
+    @Option(name = "--live", required = false, usage = "Keep the tables on the screen and update the changed prices in place " +
+            "instead of printing the tables again at every refresh. The tables must fit in the terminal.")
+    private Boolean live = false;
+
     @Option(name = "--help", aliases = {"-h"}, help = true)
     private Boolean showHelp = false;
 
@@ -45,10 +131,40 @@ class CLI {
     @Option(name = "--lowest-bin-3", required = false, usage = "Display the third lowest BIN column.")
     private Boolean lowestBin3 = false;
 
-    private Integer headerSize = 5;
+    @Option(name = "--max-connections", required = false, usage = "Maximum number of simultaneous requests to FutBIN.")
+    private Integer maxConnections = FutBINWatcher.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    @Option(name = "--requests-per-second", required = false, usage = "Maximum number of requests sent per second.")
+    private Double requestsPerSecond = FutBINWatcher.DEFAULT_REQUESTS_PER_SECOND;
 
     private Boolean firstRun = true;
 
+    private final WatchListLoader loader = new WatchListLoader();
+
+    private final DecimalFormat numberFormat = new DecimalFormat("#,###");
+    /**
+     * Formatted table row of every slot of the snapshot, null until formatted.
+     */
+    private CharSequence[][] rows = new CharSequence[0][];
+    /**
+     * Alert rules of every line of the players list, removed along with the line.
+     */
+    private final Map<ParsedLine, List<AlertRule>> lineAlertRules = new IdentityHashMap<>();
+    private Metrics.Histogram renderDuration;
+    /**
+     * Screen updated in place in live mode, null otherwise.
+     */
+    private LiveTableView liveView;
+    /**
+     * Writer of the records in the CSV and JSONL formats, and the first error it ran into.
+     */
+    private PriceWriter priceWriter;
+    private IOException outputError;
+    /**
+     * Lines of the players list refreshed by this instance when the list is shared with other ones.
+     */
+    private final Set<ParsedLine> ownedLines = Collections.newSetFromMap(new IdentityHashMap<ParsedLine, Boolean>());
+
     private static String COLOR_RED = null;
     private static String COLOR_GREEN = null;
     private static String COLOR_RESET = null;
@@ -80,38 +196,413 @@ class CLI {
             }
             refreshDelay = refreshDelay * 60;
 
-            if (lowestBin2) headerSize++;
-            if (lowestBin3) headerSize++;
+            if (maxConnections < 1) {
+                System.err.println("At least one connection is needed.");
+                return;
+            }
+
+            if (requestsPerSecond <= 0) {
+                System.err.println("The number of requests per second must be positive.");
+                return;
+            }
+
+            if (maxAttempts < 1) {
+                System.err.println("At least one attempt is needed.");
+                return;
+            }
+
+            if (connectTimeout < 1 || readTimeout < 1) {
+                System.err.println("Timeouts must be of at least one second.");
+                return;
+            }
+
+            if (cacheTTL < 0) {
+                System.err.println("The cache TTL cannot be negative.");
+                return;
+            }
+
+            if (alertHysteresis < 0 || alertHysteresis >= 100) {
+                System.err.println("The alert hysteresis must be a percentage between 0 and 100.");
+                return;
+            }
+
+            if (live && (daemon || outputFormat != OutputFormat.TABLE)) {
+                System.err.println("The live view can only display tables, it can't be used with --daemon nor --format.");
+                return;
+            }
+
+            if (live && System.getProperty("os.name").contains("Windows")) {
+                System.err.println("The live view is not supported on Windows.");
+                return;
+            }
+
+            if (daemon && httpPort == null) httpPort = SnapshotServer.DEFAULT_PORT;
+            if (httpPort != null && (httpPort < 0 || httpPort > 65535)) {
+                System.err.println("The HTTP port must be between 0 and 65535.");
+                return;
+            }
         } catch (CmdLineException e) {
             System.err.println(e.getMessage());
             return;
         }
 
         initColors();
+        if (live) liveView = new LiveTableView(System.out);
+
+        PriceListener output = null;
+        if (outputFormat != OutputFormat.TABLE) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+            priceWriter = (outputFormat == OutputFormat.CSV) ?
+                    new CsvPriceWriter(out, platform.markets()) : new JsonLinesPriceWriter(out, platform.markets());
+            output = new PriceListener() {
+                @Override
+                public void onPrices(ParsedLine line, Player player) {
+                    if (player == null || outputError != null) return;
+
+                    try {
+                        // Flushed record by record so they can be consumed as they come.
+                        priceWriter.write(line, player, System.currentTimeMillis());
+                        priceWriter.flush();
+                    } catch (IOException e) {
+                        outputError = e;
+                    }
+                }
+            };
+            // Keeps the standard output for the records so it can be piped.
+            System.setOut(System.err);
+        }
+
+        // Before any request, the JDK reads the pool's settings once.
+        HttpTransport.configurePool(maxConnections);
+        FutBINWatcher watcher = new FutBINWatcher(maxConnections, requestsPerSecond);
+        Transport transport = new HttpTransport(connectTimeout * 1000, readTimeout * 1000);
+        if (recordDirectory != null) transport = new RecordingTransport(transport, Paths.get(recordDirectory));
+        watcher.setTransport(transport);
+        watcher.setBaseUrl(baseUrl);
+        watcher.setExtractionMode(extractionMode);
+        watcher.setRetryPolicy(new RetryPolicy(maxAttempts, RetryPolicy.DEFAULT_BASE_DELAY, RetryPolicy.DEFAULT_MAX_DELAY));
+        if (cacheDirectory != null) {
+            watcher.setResponseCache(new ResponseCache(Paths.get(cacheDirectory), cacheTTL * 1000L));
+        }
+
+        PriceHistory history = createPriceHistory();
+
         checkForUpdates();
 
-        List<ParsedLine> players = readPlayersList();
-        FutBINWatcher watcher = new FutBINWatcher();
+        WatchListReloader reloader = new WatchListReloader(Paths.get(playersListFileName), loader);
+        List<ParsedLine> players = readPlayersList(reloader);
+
+        final ShardCoordinator shards = createShardCoordinator();
+        RefreshScheduler scheduler = new RefreshScheduler(refreshDelay * 1000L,
+                (shards == null) ? players : Collections.<ParsedLine>emptyList());
+        PriceSnapshot snapshot = new PriceSnapshot(platform, players);
+        if (shards != null) rebalance(shards, players, scheduler, snapshot);
+        AlertEngine alerts = createAlertEngine();
+        if (alerts != null) {
+            for (ParsedLine line : players) addAlertRules(alerts, line);
+        }
+        Metrics metrics = watcher.getMetrics();
+        Metrics.Histogram cycleDuration = metrics.durationHistogram("futbin_cycle_duration_seconds",
+                "Time taken by a refresh, from the first request to the tables being displayed.", null);
+        Metrics.Gauge lastCycleDuration = metrics.gauge("futbin_last_cycle_duration_seconds",
+                "Time taken by the last refresh.", null);
+        Metrics.Gauge refreshDelaySeconds = metrics.gauge("futbin_refresh_delay_seconds",
+                "Refresh delay chosen by the user, which the refreshes must stay well under.", null);
+        Metrics.Gauge knownPlayers = metrics.gauge("futbin_known_players", "Players whose prices are known.", null);
+        renderDuration = metrics.durationHistogram("futbin_render_duration_seconds",
+                "Time taken to build and print a table of prices.", null);
+        refreshDelaySeconds.set(refreshDelay);
+
+        SnapshotServer server = null;
+        if (httpPort != null) {
+            server = new SnapshotServer(new InetSocketAddress(httpHost, httpPort));
+            server.setMetrics(metrics);
+            System.out.println(String.format("Serving the prices on http://%s:%d/players\n", httpHost, server.getPort()));
+        }
+        Boolean listChanged = false;
 
         while (true) {
-            if (!firstRun) System.out.println("Refreshing…");
-            System.out.println("Time: " + new Date() + "\n");
+            long cycleStart = System.nanoTime();
+            if (!daemon && outputFormat == OutputFormat.TABLE && liveView == null) {
+                if (!firstRun) System.out.println("Refreshing…");
+                System.out.println("Time: " + new Date() + "\n");
+            }
+
+            List<ParsedLine> duePlayers = scheduler.due(System.currentTimeMillis());
+            PriceDelta delta = watcher.refresh(platform, duePlayers, snapshot, output);
+            if (priceWriter != null) flushRecords();
+            Long now = System.currentTimeMillis();
+            for (ParsedLine line : duePlayers) {
+                int slot = snapshot.slot(line);
+                if (!snapshot.isKnown(slot) || snapshot.isStale(slot)) {
+                    scheduler.retryLater(line, now);
+                } else {
+                    scheduler.record(line, snapshot.cheapestLowestBIN(slot), now);
+                }
+            }
+            // The live view prints them under the tables, where they stay until the next refresh.
+            if (liveView == null) printFailures(watcher.getFailures());
+
+            if (history != null) {
+                for (int slot : delta.getAppeared()) record(history, snapshot, slot, now);
+                for (int slot : delta.getChanged()) record(history, snapshot, slot, now);
+            }
 
-            List<Player> prices = watcher.getPrices(platform, players);
-            List<Player> buyPrices = new ArrayList<>();
-            List<Player> sellPrices = new ArrayList<>();
+            if (alerts != null) {
+                alerts.process(snapshot, delta);
+                if (liveView == null) printFailures(alerts.getFailures());
+            }
 
-            for (Player player : prices) {
-                if (player.getAction().equals(Action.SELL)) sellPrices.add(player);
-                else buyPrices.add(player);
+            if (server != null) server.publish(snapshot, delta, listChanged);
+
+            invalidateRows(delta.slots());
+            if (daemon) {
+                System.out.println(String.format("%s: %d player(s) refreshed, %d moved.", new Date(), duePlayers.size(), delta.size()));
+            } else if (outputFormat != OutputFormat.TABLE) {
+                // The records were written while the prices were fetched.
+            } else if (liveView != null) {
+                drawLiveView(snapshot);
+                printFailures(watcher.getFailures());
+                if (alerts != null) printFailures(alerts.getFailures());
+            } else if (firstRun || listChanged || !delta.isEmpty()) {
+                int[] buySlots = snapshot.slots(Action.BUY);
+                int[] sellSlots = snapshot.slots(Action.SELL);
+
+                if (buySlots.length > 0) printPrices(snapshot, buySlots, Action.BUY);
+                if (sellSlots.length > 0) printPrices(snapshot, sellSlots, Action.SELL);
+            } else {
+                System.out.println("No price changed.\n");
             }
 
-            if (buyPrices.size() > 0) printPrices(buyPrices, Action.BUY);
-            if (sellPrices.size() > 0) printPrices(sellPrices, Action.SELL);
+            cycleDuration.recordSince(cycleStart);
+            lastCycleDuration.set((System.nanoTime() - cycleStart) / 1e9);
+            knownPlayers.set(snapshot.slots().length);
+            if (metricsFileName != null) {
+                try {
+                    metrics.writeTo(Paths.get(metricsFileName));
+                } catch (IOException e) {
+                    System.err.println("Could not write the metrics file: " + e.getMessage());
+                }
+            }
 
             firstRun = false;
+            listChanged = false;
+
+            Long nextDue = scheduler.nextDue();
+            if (nextDue == null) nextDue = System.currentTimeMillis() + refreshDelay * 1000L;
+            Long deadline = Math.max(System.currentTimeMillis() + 1000L, nextDue);
+
+            // Waits for the next refresh, picking up the edits of the players list and the instances
+            // joining or leaving in the meantime.
+            while (!listChanged && System.currentTimeMillis() < deadline) {
+                Long timeout = deadline - System.currentTimeMillis();
+                if (shards != null) timeout = Math.min(timeout, ShardCoordinator.HEARTBEAT_INTERVAL);
+
+                WatchListReloader.Diff diff = reloader.awaitChange(timeout);
+                if (shards != null && shards.refresh()) {
+                    rebalance(shards, reloader.getLines(), scheduler, snapshot);
+                    listChanged = true;
+                }
+                if (diff == null) continue;
 
-            Thread.sleep(refreshDelay * 1000);
+                printListErrors(diff.getErrors());
+                if (diff.isEmpty()) continue;
+
+                for (ParsedLine line : diff.getRemoved()) {
+                    scheduler.remove(line);
+                    removeFromSnapshot(snapshot, line);
+                    ownedLines.remove(line);
+                    if (alerts != null) removeAlertRules(alerts, line);
+                }
+                for (ParsedLine line : diff.getAdded()) {
+                    if (shards == null || own(shards, line)) scheduler.add(line);
+                    snapshot.add(line);
+                    if (alerts != null) addAlertRules(alerts, line);
+                }
+                snapshot.order(diff.getLines());
+
+                System.out.println(String.format("Players list reloaded: %d added, %d removed.\n",
+                        diff.getAdded().size(), diff.getRemoved().size()));
+                listChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the records of the refresh were written out, and stops if they couldn't be, e.g. when the output was closed.
+     */
+    private void flushRecords() {
+        try {
+            if (outputError == null) priceWriter.flush();
+        } catch (IOException e) {
+            outputError = e;
+        }
+
+        if (outputError != null) {
+            System.err.println("Could not write the prices: " + outputError.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Joins the instances sharing the shard directory, or returns null if the players list isn't shared.
+     * The instance leaves the group when the program stops.
+     */
+    private ShardCoordinator createShardCoordinator() throws IOException {
+        if (shardDirectory == null) return null;
+
+        final ShardCoordinator shards;
+        try {
+            shards = new ShardCoordinator(Paths.get(shardDirectory),
+                    (shardId == null) ? ShardCoordinator.defaultInstanceId() : shardId);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+            return null;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    shards.close();
+                } catch (IOException e) {
+                    // The other instances will take over once the heartbeat times out.
+                }
+            }
+        });
+
+        return shards;
+    }
+
+    /**
+     * Opens the price history if a directory was given. It is flushed and closed when the program stops.
+     */
+    private PriceHistory createPriceHistory() throws IOException {
+        if (historyDirectory == null) return null;
+
+        final PriceHistory history = new PriceHistory(Paths.get(historyDirectory));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    history.close();
+                } catch (IOException e) {
+                    // The samples were written to the mapped files, the OS saves them anyway.
+                }
+            }
+        });
+
+        return history;
+    }
+
+    /**
+     * Refreshes the players owned by this instance only. The players it gives away are forgotten,
+     * and the ones it takes over are refreshed right away.
+     */
+    private void rebalance(ShardCoordinator shards, List<ParsedLine> lines, RefreshScheduler scheduler,
+                           PriceSnapshot snapshot) {
+        for (ParsedLine line : lines) {
+            if (shards.owns(line.getPlayerId())) {
+                if (ownedLines.add(line)) scheduler.add(line);
+            } else if (ownedLines.remove(line)) {
+                scheduler.remove(line);
+                // The prices are kept up to date by another instance from now on.
+                removeFromSnapshot(snapshot, line);
+                snapshot.add(line);
+            }
+        }
+        snapshot.order(lines);
+
+        System.out.println(String.format("Instance %s of %d: watching %d of the %d players.\n",
+                shards.getInstanceId(), shards.getMembers().size(), ownedLines.size(), lines.size()));
+    }
+
+    /**
+     * Tells whether a line added to the players list is refreshed by this instance.
+     */
+    private Boolean own(ShardCoordinator shards, ParsedLine line) {
+        if (!shards.owns(line.getPlayerId())) return false;
+
+        ownedLines.add(line);
+        return true;
+    }
+
+    /**
+     * Returns an alert engine watching the targets of the watch list and the additional rules,
+     * or null if alerts aren't sent anywhere.
+     */
+    private AlertEngine createAlertEngine() throws IOException, IdParsingException {
+        if (alertFile == null && alertCommand == null && alertWebhook == null) return null;
+
+        AlertEngine engine = new AlertEngine(alertHysteresis / 100);
+        if (alertFile != null) engine.addSink(new FileAlertSink(Paths.get(alertFile)));
+        if (alertCommand != null) engine.addSink(new CommandAlertSink(Arrays.asList(alertCommand.trim().split(" +"))));
+        if (alertWebhook != null) engine.addSink(new WebhookAlertSink(new URL(alertWebhook)));
+
+        if (alertRulesFileName != null) {
+            List<String> lines = FileUtils.readLines(new File(alertRulesFileName), "UTF-8");
+            for (String line : lines) {
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.trim().split(" +");
+                AlertRule.Direction direction;
+                try {
+                    direction = AlertRule.Direction.valueOf(parts[0].toUpperCase());
+                    if (parts.length != 3) throw new IllegalArgumentException();
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(String.format("Invalid alert \"%s\", it should be \"below link price\" or \"above link price\".", line));
+                }
+
+                String playerId = cleanFUTId(parts[1]);
+                Double threshold;
+                try {
+                    threshold = Double.parseDouble(parts[2]);
+                    // NaN and infinities would break the index's range queries and the webhook's JSON.
+                    if (threshold.isNaN() || threshold.isInfinite() || threshold <= 0) throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("The price in the alert \"%s\" is not a number.", line));
+                }
+                for (Platform market : platform.markets()) {
+                    engine.addRule(new AlertRule(playerId, market, direction, threshold, direction.toString()));
+                }
+            }
+        }
+
+        return engine;
+    }
+
+    private void addAlertRules(AlertEngine alerts, ParsedLine line) {
+        List<AlertRule> rules = new ArrayList<>();
+        for (Platform market : platform.markets()) rules.add(AlertRule.of(line, market));
+
+        for (AlertRule rule : rules) alerts.addRule(rule);
+        lineAlertRules.put(line, rules);
+    }
+
+    private void removeAlertRules(AlertEngine alerts, ParsedLine line) {
+        List<AlertRule> rules = lineAlertRules.remove(line);
+        if (rules == null) return;
+
+        for (AlertRule rule : rules) alerts.removeRule(rule);
+    }
+
+    /**
+     * Appends a player's fresh prices to the history.
+     */
+    private void record(PriceHistory history, PriceSnapshot snapshot, int slot, long timestamp) throws IOException {
+        if (snapshot.isStale(slot)) return;
+
+        long playerNumber = snapshot.getPlayerNumber(slot);
+        if (playerNumber == PriceSnapshot.UNKNOWN) return;
+
+        List<Platform> markets = snapshot.getMarkets();
+        for (int market = 0; market < markets.size(); market++) {
+            long lowestBIN = snapshot.getLowestBIN(slot, market);
+            if (lowestBIN == PriceSnapshot.UNKNOWN) continue;
+
+            history.append(playerNumber, markets.get(market), timestamp, lowestBIN,
+                    snapshot.getLowestBIN2(slot), snapshot.getLowestBIN3(slot));
         }
     }
 
@@ -147,32 +638,39 @@ class CLI {
     }
 
     /**
-     * Extracts the player's ID from a string
+     * Extracts the player's ID from a link, or returns a numeric ID as is.
      */
-    private String cleanFUTId(String id) throws IdParsingException {
-        Pattern p = Pattern.compile("16/player/(\\d+.*$)");
-        Matcher m = p.matcher(id);
-
-        if (m.find()) {
-            return m.group(1);
-        } else {
-            throw new IdParsingException(String.format("Could not extract the player's id from \"%s\".", id));
-        }
+    String cleanFUTId(String id) throws IdParsingException {
+        return loader.playerId(id);
     }
 
-    private String colorize(String s) {
+    /**
+     * Returns a cell in red if the number is negative, in green otherwise.
+     */
+    private ASCIITableCell colorize(String s) {
         if (s.contains("-")) {
-            return COLOR_RED + s + COLOR_RESET;
+            return new ASCIITableCell(s, COLOR_RED);
         } else {
-            return COLOR_GREEN + s + COLOR_RESET;
+            return new ASCIITableCell(s, COLOR_GREEN);
         }
     }
 
-    private String formatNumber(Number n) {
-        return new DecimalFormat("#,###").format(n);
+    private String formatNumber(double n) {
+        return numberFormat.format(n);
+    }
+
+    /**
+     * Formats a price of a snapshot, unknown prices being left blank.
+     */
+    private String formatPrice(long price) {
+        return (price == PriceSnapshot.UNKNOWN) ? "" : numberFormat.format(price);
+    }
+
+    private CharSequence formatDifference(Action action, long targetPrice, long lowestBIN) {
+        return (lowestBIN == PriceSnapshot.UNKNOWN) ? "" : colorize(formatNumber(difference(action, targetPrice, lowestBIN)));
     }
 
-    private void initColors() {
+    void initColors() {
         if (System.getProperty("os.name").contains("Windows")) {
             COLOR_RED = "";
             COLOR_GREEN = "";
@@ -184,147 +682,195 @@ class CLI {
         }
     }
 
-    private String[][] listToString2DArray(List<Player> players, Action action) {
-        String[][] data = new String[players.size() + 2][headerSize];
+    /**
+     * Builds a table's cells. The rows of the players are reused from the previous tables until
+     * {@link #invalidateRows} is called for them.
+     */
+    CharSequence[][] listToString2DArray(PriceSnapshot snapshot, int[] slots, Action action) {
+        CharSequence[][] data = new CharSequence[slots.length + 2][];
+        Integer markets = snapshot.getMarkets().size();
+        if (rows.length < snapshot.size()) rows = Arrays.copyOf(rows, snapshot.size());
+
+        for (Integer i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (rows[slot] != null) {
+                data[i] = rows[slot];
+                continue;
+            }
 
-        for (Integer i = 0; i < players.size(); i++) {
+            CharSequence[] row = new CharSequence[headerSize()];
             Integer j = 0;
-            double diff;
-            if (action.equals(Action.BUY)) diff = players.get(i).getTargetPrice() - players.get(i).getLowestBIN();
-            else                           diff = (0.95 * players.get(i).getLowestBIN()) - players.get(i).getTargetPrice();
-
-            data[i][j++] = (action.equals(Action.BUY)) ? "B" : "S";
-            data[i][j++] = players.get(i).getName();
-            data[i][j++] = formatNumber(players.get(i).getTargetPrice());
-            data[i][j++] = formatNumber(players.get(i).getLowestBIN());
-            if (lowestBin2) data[i][j++] = formatNumber(players.get(i).getLowestBIN2());
-            if (lowestBin3) data[i][j++] = formatNumber(players.get(i).getLowestBIN3());
-            data[i][j] = colorize(formatNumber(diff));
+
+            row[j++] = ((action.equals(Action.BUY)) ? "B" : "S") + (snapshot.isStale(slot) ? "*" : "");
+            row[j++] = snapshot.getName(slot);
+            row[j++] = formatPrice(snapshot.getTargetPrice(slot));
+            for (Integer market = 0; market < markets; market++) row[j++] = formatPrice(snapshot.getLowestBIN(slot, market));
+            if (lowestBin2) row[j++] = formatPrice(snapshot.getLowestBIN2(slot));
+            if (lowestBin3) row[j++] = formatPrice(snapshot.getLowestBIN3(slot));
+            for (Integer market = 0; market < markets; market++) {
+                row[j++] = formatDifference(action, snapshot.getTargetPrice(slot), snapshot.getLowestBIN(slot, market));
+            }
+
+            rows[slot] = row;
+            data[i] = row;
         }
+        data[slots.length] = new CharSequence[headerSize()];
+        data[slots.length + 1] = new CharSequence[headerSize()];
 
-        for (Integer i = 0; i < headerSize; i++) data[players.size()][i] = "";
+        for (Integer i = 0; i < headerSize(); i++) data[slots.length][i] = "";
 
         Integer j = 0;
+        long totalTargetPrice = snapshot.totalTargetPrice(slots);
 
-        double diff;
-        if (action.equals(Action.BUY)) diff = totalTargetPrice(players) - totalLowestBIN(players);
-        else                           diff = (0.95 * totalLowestBIN(players)) - totalTargetPrice(players);
-
-        data[players.size() + 1][j++] = "";
-        data[players.size() + 1][j++] = "  Total";
-        data[players.size() + 1][j++] = formatNumber(totalTargetPrice(players));
-        data[players.size() + 1][j++] = formatNumber(totalLowestBIN(players));
-        if (lowestBin2) data[players.size() + 1][j++] = formatNumber(totalLowestBIN2(players));
-        if (lowestBin3) data[players.size() + 1][j++] = formatNumber(totalLowestBIN3(players));
-        data[players.size() + 1][j] = colorize(formatNumber(diff));
+        data[slots.length + 1][j++] = "";
+        data[slots.length + 1][j++] = "  Total";
+        data[slots.length + 1][j++] = formatPrice(totalTargetPrice);
+        for (Integer market = 0; market < markets; market++) {
+            data[slots.length + 1][j++] = formatPrice(snapshot.totalLowestBIN(slots, market));
+        }
+        if (lowestBin2) data[slots.length + 1][j++] = formatPrice(snapshot.totalLowestBIN2(slots));
+        if (lowestBin3) data[slots.length + 1][j++] = formatPrice(snapshot.totalLowestBIN3(slots));
+        for (Integer market = 0; market < markets; market++) {
+            data[slots.length + 1][j++] = formatDifference(action, totalTargetPrice, snapshot.totalLowestBIN(slots, market));
+        }
 
         return data;
     }
 
-    private List<ParsedLine> readPlayersList() throws IdParsingException {
-        List<ParsedLine> players = new ArrayList<>();
+    /**
+     * Removes a line from the snapshot along with its formatted row, its slot going to the next line added.
+     */
+    private void removeFromSnapshot(PriceSnapshot snapshot, ParsedLine line) {
+        int slot = snapshot.slot(line);
+        if (slot < 0) return;
+
+        snapshot.remove(line);
+        invalidateRows(new int[]{slot});
+    }
+
+    /**
+     * Forgets the formatted rows of the given slots, whose prices changed.
+     */
+    void invalidateRows(int[] slots) {
+        for (int slot : slots) {
+            if (slot < rows.length) rows[slot] = null;
+        }
+    }
+
+    /**
+     * Returns how much cheaper than the target a player can be bought, or the profit after tax of a sale.
+     */
+    private double difference(Action action, long targetPrice, long lowestBIN) {
+        if (action.equals(Action.BUY)) return targetPrice - lowestBIN;
+        else                           return (0.95 * lowestBIN) - targetPrice;
+    }
 
-        File file = new File(playersListFileName);
+    private List<ParsedLine> readPlayersList(WatchListReloader reloader) {
+        WatchListReloader.Diff list = null;
         try {
-            List<String> lines = FileUtils.readLines(file, "UTF-8");
-            for (String line : lines) {
-                if (line.length() == 0) continue;
-                if (line.startsWith("#")) continue;
-                players.add(parseLine(line));
-            }
-        } catch (Exception e) {
+            list = reloader.load();
+        } catch (IOException e) {
             System.err.println("Error while reading the players list.");
             e.printStackTrace();
             System.exit(-1);
         }
 
-        return players;
+        printListErrors(list.getErrors());
+        if (list.getLines().isEmpty() && !list.getErrors().isEmpty()) System.exit(-1);
+
+        return list.getLines();
     }
 
-    private ParsedLine parseLine(String line) throws IdParsingException {
-        try {
-            String[] parts = line.split(" +");
-            if (parts.length == 2) {
-                System.out.println("\"link price\" notation is deprecated. Use \"buy link for price\" or \"sell link for price\".");
-                System.out.println("Check the manual for more information: http://dinduks.github.io/futbin-watcher/");
+    /**
+     * Reports the lines of the players list that could not be read, which are ignored.
+     */
+    private void printListErrors(List<String> errors) {
+        if (errors.isEmpty()) return;
 
-                return new ParsedLine(cleanFUTId(parts[0]), Action.BUY, Long.parseLong(parts[1]));
-            } else if (parts.length == 3) {
-                try {
-                    Action action = Action.valueOf(parts[0].toUpperCase());
-                    return new ParsedLine(cleanFUTId(parts[1]), action, Long.parseLong(parts[2]));
-                } catch (Exception e) {
-                    System.err.println("Error while reading the players list.");
-                    System.out.println("The action parameter in \"" + line + "\" is not valid.");
-                    System.out.println("It should be either \"buy\" or \"sell\".");
-                    System.exit(-1);
-                    return null;
-                }
-            } else if (parts.length == 4) {
-                try {
-                    Action action = Action.valueOf(parts[0].toUpperCase());
-                    return new ParsedLine(cleanFUTId(parts[1]), action, Long.parseLong(parts[3]));
-                } catch (Exception e) {
-                    System.err.println("Error while reading the players list.");
-                    System.out.println("The action parameter in \"" + line + "\" is not valid.");
-                    System.out.println("It should be either \"buy\" or \"sell\".");
-                    System.exit(-1);
-                    return null;
-                }
-            } else {
-                System.err.println("Error while reading line \"" + line + "\".");
-                System.exit(-1);
-                return null;
-            }
-        } catch (NumberFormatException e) {
-            System.err.println("Error while reading the players list.");
-            System.out.println("The price parameter in \"" + line + "\" is not a number.");
-            System.exit(-1);
-            return null;
+        System.err.println(String.format("%d line(s) of the players list could not be read and are ignored:", errors.size()));
+        for (String error : errors) System.err.println("  " + error);
+        System.err.println();
+    }
+
+    ParsedLine parseLine(String line) throws IdParsingException {
+        return loader.parseLine(line);
+    }
+
+    private void printPrices(PriceSnapshot snapshot, int[] slots, Action action) throws IOException {
+        long start = System.nanoTime();
+        ASCIITable.getInstance().writeTable(tableHeader(action), listToString2DArray(snapshot, slots, action), System.out);
+        System.out.println();
+        if (renderDuration != null) renderDuration.recordSince(start);
+
+        String note = staleNote(snapshot, slots);
+        if (note != null) System.out.println(note + "\n");
+    }
+
+    /**
+     * Updates the tables of the live view.
+     */
+    private void drawLiveView(PriceSnapshot snapshot) throws IOException {
+        long start = System.nanoTime();
+        List<LiveTableView.Table> tables = new ArrayList<>();
+        for (Action action : Action.values()) {
+            int[] slots = snapshot.slots(action);
+            if (slots.length == 0) continue;
+
+            tables.add(new LiveTableView.Table(tableHeader(action), listToString2DArray(snapshot, slots, action),
+                    staleNote(snapshot, slots)));
         }
+
+        liveView.draw("Time: " + new Date(), tables.toArray(new LiveTableView.Table[tables.size()]));
+        if (renderDuration != null) renderDuration.recordSince(start);
     }
 
-    private void printPrices(List<Player> players, Action action) {
+    private void printFailures(List<String> failures) {
+        for (String failure : failures) System.err.println(failure);
+    }
+
+    private ASCIITableHeader[] tableHeader(Action action) {
         Integer i = 0;
-        ASCIITableHeader[] header = new ASCIITableHeader[headerSize];
+        ASCIITableHeader[] header = new ASCIITableHeader[headerSize()];
         header[i++] = new ASCIITableHeader(" ");
         header[i++] = new ASCIITableHeader("Name", ASCIITable.ALIGN_LEFT);
         header[i++] = new ASCIITableHeader("Target price");
-        header[i++] = new ASCIITableHeader("Lowest BIN");
+        for (Platform market : platform.markets()) header[i++] = new ASCIITableHeader(columnName("Lowest BIN", market));
         if (lowestBin2) header[i++] = new ASCIITableHeader("Lowest BIN 2");
         if (lowestBin3) header[i++] = new ASCIITableHeader("Lowest BIN 3");
-        header[i] = new ASCIITableHeader((action.equals(Action.BUY)) ? "Difference" : "Profit after tax");
-
-        String table = ASCIITable.getInstance().getTable(header, listToString2DArray(players, action));
-        table = table.replace("\u001B[31", "         \u001B[31").replace("\u001B[32", "         \u001B[32");
-        System.out.println(table);
-    }
-
-    private Long totalLowestBIN(List<Player> players) {
-        Long total = 0L;
-        for (Player player : players) total += player.getLowestBIN();
+        for (Platform market : platform.markets()) {
+            header[i++] = new ASCIITableHeader(columnName((action.equals(Action.BUY)) ? "Difference" : "Profit after tax", market));
+        }
 
-        return total;
+        return header;
     }
 
-    private Long totalLowestBIN2(List<Player> players) {
-        Long total = 0L;
-        for (Player player : players) total += player.getLowestBIN2();
+    /**
+     * Returns the note displayed under a table with stale prices, or null.
+     */
+    private String staleNote(PriceSnapshot snapshot, int[] slots) {
+        for (int slot : slots) {
+            if (snapshot.isStale(slot)) return "* The prices of these players could not be refreshed, the last known ones are displayed.";
+        }
 
-        return total;
+        return null;
     }
 
-    private Long totalLowestBIN3(List<Player> players) {
-        Long total = 0L;
-        for (Player player : players) total += player.getLowestBIN3();
+    /**
+     * Returns the number of columns of the tables: action, name, target price, the optional lowest BINs,
+     * and a lowest BIN and a difference for each watched market.
+     */
+    private Integer headerSize() {
+        Integer headerSize = 3 + 2 * platform.markets().size();
+        if (lowestBin2) headerSize++;
+        if (lowestBin3) headerSize++;
 
-        return total;
+        return headerSize;
     }
 
-    private Long totalTargetPrice(List<Player> players) {
-        Long total = 0L;
-        for (Player player : players) total += player.getTargetPrice();
-
-        return total;
+    /**
+     * Suffixes a column's name with its market when several markets are displayed.
+     */
+    private String columnName(String name, Platform market) {
+        return (platform == Platform.ALL) ? name + " " + market : name;
     }
-}
\ No newline at end of file
+}
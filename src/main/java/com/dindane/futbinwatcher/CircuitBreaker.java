@@ -0,0 +1,55 @@
+package com.dindane.futbinwatcher;
+
+/**
+ * Stops sending requests to a host after a series of consecutive failures.
+ *
+ * Once the pause is over a single trial request is let through: the breaker closes again if it succeeds
+ * and starts a new pause if it fails.
+ */
+class CircuitBreaker {
+    static final Integer DEFAULT_FAILURE_THRESHOLD = 5;
+    static final Long DEFAULT_PAUSE = 60000L;
+
+    private final Integer failureThreshold;
+    private final Long pause;
+
+    private Integer consecutiveFailures = 0;
+    private Long openUntil = 0L;
+    private Boolean trialInFlight = false;
+
+    CircuitBreaker(Integer failureThreshold, Long pause) {
+        this.failureThreshold = failureThreshold;
+        this.pause = pause;
+    }
+
+    synchronized Boolean allowRequest() {
+        if (consecutiveFailures < failureThreshold) return true;
+        if (System.currentTimeMillis() < openUntil || trialInFlight) return false;
+
+        trialInFlight = true;
+        return true;
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (consecutiveFailures >= failureThreshold) openUntil = System.currentTimeMillis() + pause;
+    }
+
+    /**
+     * Records a request whose outcome says nothing about the host's health, e.g. a missing page.
+     * The failures counted so far are kept, only a trial request is let go.
+     */
+    synchronized void recordIgnored() {
+        trialInFlight = false;
+    }
+
+    synchronized Boolean isOpen() {
+        return consecutiveFailures >= failureThreshold;
+    }
+}
@@ -0,0 +1,108 @@
+package com.dindane.futbinwatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a command for every alert, e.g. a notification script. The alert's message is passed as the
+ * last argument, and its details in the FUTBIN_* environment variables.
+ *
+ * The command's output is copied to the standard error, the standard output being kept for the
+ * records of the CSV and JSONL formats. A command still running after the timeout is stopped.
+ */
+public class CommandAlertSink implements AlertSink {
+    public static final Long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Stops the commands that run for too long.
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "futbin-alert-command-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final List<String> command;
+    private final Long timeout;
+
+    public CommandAlertSink(List<String> command) {
+        this(command, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param timeout time after which the command is stopped, in milliseconds
+     */
+    public CommandAlertSink(List<String> command, Long timeout) {
+        this.command = command;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void send(Alert alert) throws IOException {
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add(alert.getMessage());
+
+        ProcessBuilder builder = new ProcessBuilder(arguments)
+                .redirectInput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        Map<String, String> environment = builder.environment();
+        environment.put("FUTBIN_PLAYER_ID", alert.getRule().getPlayerId());
+        environment.put("FUTBIN_PLAYER_NAME", alert.getPlayerName());
+        environment.put("FUTBIN_MARKET", alert.getRule().getMarket().toString());
+        environment.put("FUTBIN_RULE", alert.getRule().getDescription());
+        environment.put("FUTBIN_LOWEST_BIN", String.valueOf(alert.getLowestBIN()));
+        environment.put("FUTBIN_THRESHOLD", String.valueOf(alert.getRule().getThreshold()));
+
+        try {
+            final Process process = builder.start();
+            final AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> stop = watchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut.set(true);
+                    process.destroy();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+
+            // Copied by another thread, the output can stay open after the command is stopped, e.g. by a child process.
+            Thread copy = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (InputStream output = process.getInputStream()) {
+                        byte[] buffer = new byte[4096];
+                        int read;
+                        while ((read = output.read(buffer)) != -1) System.err.write(buffer, 0, read);
+                        System.err.flush();
+                    } catch (IOException e) {
+                        // The command's output is only informative.
+                    }
+                }
+            }, "futbin-alert-command-output");
+            copy.setDaemon(true);
+            copy.start();
+
+            Integer status = process.waitFor();
+            stop.cancel(false);
+            if (timedOut.get()) {
+                throw new IOException(String.format("The alert command did not finish within %d seconds and was stopped.",
+                        TimeUnit.MILLISECONDS.toSeconds(timeout)));
+            }
+            if (status != 0) throw new IOException(String.format("The alert command exited with status %d.", status));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the alert command.");
+        }
+    }
+}
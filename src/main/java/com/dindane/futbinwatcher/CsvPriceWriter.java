@@ -0,0 +1,94 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a CSV record per player, the header being written before the first one.
+ * Unknown prices are left empty.
+ */
+public class CsvPriceWriter implements PriceWriter {
+    private final Writer out;
+    private final List<Platform> markets;
+    private Boolean headerWritten = false;
+
+    /**
+     * @param out should be buffered, every field being written separately
+     */
+    public CsvPriceWriter(Writer out, List<Platform> markets) {
+        this.out = out;
+        this.markets = markets;
+    }
+
+    @Override
+    public void write(ParsedLine line, Player player, Long timestamp) throws IOException {
+        if (!headerWritten) {
+            out.write("timestamp,id,name,action,target_price");
+            for (Platform market : markets) out.write(",lowest_bin_" + market.toString().toLowerCase());
+            out.write(",lowest_bin_2,lowest_bin_3,stale\r\n");
+            headerWritten = true;
+        }
+
+        out.write(timestamp.toString());
+        out.write(',');
+        writeField(line.getPlayerId());
+        out.write(',');
+        writeField(player.getName());
+        out.write(',');
+        out.write(line.getAction().toString());
+        out.write(',');
+        writePrice(line.getTargetPrice());
+        for (Platform market : markets) {
+            out.write(',');
+            writePrice(player.getLowestBIN(market));
+        }
+        out.write(',');
+        writePrice(player.getLowestBIN2());
+        out.write(',');
+        writePrice(player.getLowestBIN3());
+        out.write(',');
+        out.write(player.isStale().toString());
+        out.write("\r\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes a price, leaving the field empty when it is unknown. The 2nd and 3rd lowest BINs are -1
+     * when FutBIN doesn't show them.
+     */
+    private void writePrice(Long price) throws IOException {
+        if (price != null && price >= 0) out.write(price.toString());
+    }
+
+    /**
+     * Writes a field, quoted only if it contains a separator, a quote or a line break.
+     */
+    private void writeField(String field) throws IOException {
+        if (field == null) return;
+
+        Boolean quoted = false;
+        for (int i = 0; i < field.length() && !quoted; i++) {
+            char c = field.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            out.write(field);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
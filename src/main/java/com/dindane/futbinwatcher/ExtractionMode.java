@@ -0,0 +1,13 @@
+package com.dindane.futbinwatcher;
+
+public enum ExtractionMode {
+    /**
+     * Tokenizes the pages and stops reading them once the prices are found.
+     * Falls back to DOM for the pages or platforms it can't handle.
+     */
+    STREAMING,
+    /**
+     * Parses the whole pages with Jsoup and reads them with Xsoup.
+     */
+    DOM
+}
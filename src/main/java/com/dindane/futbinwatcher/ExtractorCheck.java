@@ -0,0 +1,85 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+import com.dindane.futbinwatcher.exceptions.UnsupportedPlatformException;
+import org.jsoup.Jsoup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Checks that the streaming extractor and the Jsoup/Xsoup selectors read the same values from recorded pages.
+ *
+ * Usage: ExtractorCheck <platform> <page or directory of pages>...
+ */
+public class ExtractorCheck {
+    public static void main(String[] args) throws IOException, UnsupportedPlatformException {
+        if (args.length < 2) {
+            System.err.println("Usage: ExtractorCheck <platform> <page or directory of pages>...");
+            System.exit(-1);
+        }
+
+        Platform platform = Platform.valueOf(args[0].toUpperCase());
+        StreamingExtractor streamingExtractor = StreamingExtractor.forPlatform(platform);
+        if (streamingExtractor == null) {
+            System.err.println("There is no streaming extractor for " + platform + ".");
+            System.exit(-1);
+        }
+
+        Integer checked = 0;
+        Integer mismatches = 0;
+
+        for (Integer i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] pages = file.isDirectory() ? file.listFiles() : new File[]{file};
+            if (pages == null) continue;
+
+            for (File page : pages) {
+                if (!page.isFile()) continue;
+
+                if (!check(platform, streamingExtractor, page)) mismatches++;
+                checked++;
+            }
+        }
+
+        System.out.println(String.format("%d page(s) checked, %d mismatch(es).", checked, mismatches));
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static Boolean check(Platform platform, StreamingExtractor streamingExtractor, File page)
+            throws IOException, UnsupportedPlatformException {
+        String url = page.toURI().toString();
+        ParsedLine line = new ParsedLine(page.getName(), Action.BUY, 0L);
+
+        Player expected;
+        try {
+            expected = SelectorRegistry.forPlatform(platform).extract(Jsoup.parse(page, "UTF-8", url), url, line);
+        } catch (RuntimeException e) {
+            System.out.println("SKIPPED  " + page + ": the DOM path can't read it (" + e + ").");
+            return true;
+        }
+
+        Player actual;
+        try (Reader in = new InputStreamReader(Files.newInputStream(page.toPath()), StandardCharsets.UTF_8)) {
+            actual = streamingExtractor.extract(in, url, line);
+        }
+
+        if (actual == null) {
+            System.out.println("FALLBACK " + page + ": the streaming extractor defers to the DOM path.");
+            return true;
+        } else if (!actual.equals(expected)) {
+            System.out.println("MISMATCH " + page);
+            System.out.println("    DOM:       " + expected);
+            System.out.println("    streaming: " + actual);
+            return false;
+        }
+
+        System.out.println("OK       " + page);
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.dindane.futbinwatcher;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends every alert as a line of a local file.
+ */
+public class FileAlertSink implements AlertSink {
+    private final Path file;
+
+    public FileAlertSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void send(Alert alert) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(alert.toString());
+            out.write(System.lineSeparator());
+        }
+    }
+}
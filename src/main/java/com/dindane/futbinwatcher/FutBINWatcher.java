@@ -1,74 +1,523 @@
 package com.dindane.futbinwatcher;
 
+import com.dindane.futbinwatcher.exceptions.HttpStatusException;
 import com.dindane.futbinwatcher.exceptions.ParsedLine;
 import com.dindane.futbinwatcher.exceptions.UnsupportedPlatformException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import us.codecraft.xsoup.Xsoup;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.net.ConnectException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import static com.dindane.futbinwatcher.Platform.*;
 
 public class FutBINWatcher {
     private static final String urlPattern = "http://www.%s.com/16/player/%s";
+    private static final String pathPattern = "/16/player/%s";
 
-    public List<Player> getPrices(Platform platform, List<ParsedLine> players) throws ConnectException, UnsupportedPlatformException {
-        List<Player> playersList = new ArrayList<>();
+    public static final Integer DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    public static final Double DEFAULT_REQUESTS_PER_SECOND = 5.0;
+
+    private static final Integer FETCH_THREADS = 16;
+
+    private final Integer maxConnectionsPerHost;
+    private final RateLimiter rateLimiter;
+    private volatile ExtractionMode extractionMode = ExtractionMode.STREAMING;
+    private volatile ResponseCache responseCache;
+    private volatile Transport transport;
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+    private volatile String baseUrl;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Player> lastKnownPrices = new ConcurrentHashMap<>();
+    private volatile List<String> lastFailures = Collections.emptyList();
+    private volatile Instruments instruments;
+    private final ExecutorService executor = Executors.newFixedThreadPool(FETCH_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "futbin-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public FutBINWatcher() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_REQUESTS_PER_SECOND);
+    }
+
+    /**
+     * @param maxConnectionsPerHost maximum number of requests in flight against a single host
+     * @param requestsPerSecond     maximum number of requests started per second, all hosts included
+     */
+    public FutBINWatcher(Integer maxConnectionsPerHost, Double requestsPerSecond) {
+        if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("At least one connection per host is needed.");
+
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.rateLimiter = new RateLimiter(requestsPerSecond);
+        setMetrics(new Metrics());
+    }
+
+    /**
+     * Records the fetches' durations, sizes, retries and errors in a registry.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.instruments = new Instruments(metrics);
+    }
+
+    public Metrics getMetrics() {
+        return instruments.metrics;
+    }
+
+    /**
+     * Enables caching of the extracted values and conditional requests. A null cache disables both.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
 
-        String website = (platform == PC) ? "futpc" : "futbin";
+    /**
+     * Sets how the pages are fetched, an {@link HttpTransport} with the default timeouts if never set.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
 
+    private Transport transport() {
+        Transport current = transport;
+        if (current == null) {
+            current = new HttpTransport(HttpTransport.DEFAULT_CONNECT_TIMEOUT, HttpTransport.DEFAULT_READ_TIMEOUT);
+            transport = current;
+        }
+
+        return current;
+    }
+
+    public void setExtractionMode(ExtractionMode extractionMode) {
+        this.extractionMode = extractionMode;
+    }
+
+    /**
+     * Fetches the pages from another server, like a {@link ReplayServer}, instead of FutBIN. A null URL restores FutBIN.
+     */
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = (baseUrl == null) ? null : baseUrl.replaceAll("/+$", "");
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Fetches the prices of a list of players.
+     *
+     * A player whose page can't be fetched doesn't fail the others: its last known prices are returned,
+     * marked as stale. The returned list has one element per line, in the same order; an element is null
+     * when the page failed and no price was ever known for that player.
+     */
+    public List<Player> getPrices(Platform platform, List<ParsedLine> players) throws UnsupportedPlatformException, InterruptedException {
+        return getPrices(platform, players, null);
+    }
+
+    /**
+     * Fetches the prices of a list of players, handing each of them to a listener as soon as it is available
+     * instead of once the whole list is done.
+     */
+    public List<Player> getPrices(Platform platform, List<ParsedLine> players, PriceListener listener)
+            throws UnsupportedPlatformException, InterruptedException {
+        List<Player> playersList = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+
+        SelectorRegistry.PageSelectors selectors = SelectorRegistry.forPlatform(platform);
+        StreamingExtractor streamingExtractor = (extractionMode == ExtractionMode.STREAMING) ?
+                StreamingExtractor.forPlatform(platform) : null;
+        Instruments instruments = this.instruments;
+        List<Future<Player>> results = new ArrayList<>(players.size());
         for (ParsedLine line : players) {
-            String url = String.format(urlPattern, website, line.getPlayerId());
+            String url = url(platform, line);
+            results.add(executor.submit(fetch(url, line, platform.markets(), selectors, streamingExtractor,
+                    instruments, instruments.fetchDuration.get(platform))));
+        }
 
-            Document doc;
+        try {
+            for (Integer i = 0; i < players.size(); i++) {
+                ParsedLine line = players.get(i);
+                String url = url(platform, line);
 
+                Player player;
+                try {
+                    player = results.get(i).get();
+                    lastKnownPrices.put(url, player);
+                } catch (ExecutionException e) {
+                    instruments.errors.increment();
+                    Throwable cause = e.getCause();
+                    failures.add(String.format("Could not get the prices of \"%s\": %s", url,
+                            (cause.getMessage() == null) ? cause.toString() : cause.getMessage()));
+
+                    Player lastKnown = lastKnownPrices.get(url);
+                    player = (lastKnown == null) ? null : lastKnown.stale(line);
+                }
+
+                playersList.add(player);
+                if (listener != null) listener.onPrices(line, player);
+            }
+        } finally {
+            for (Future<Player> result : results) result.cancel(true);
+        }
+
+        lastFailures = Collections.unmodifiableList(failures);
+        return playersList;
+    }
+
+    /**
+     * Fetches the prices of some lines of a snapshot's watch list, stores them in the snapshot and returns
+     * the players that moved since their previous refresh.
+     */
+    public PriceDelta refresh(Platform platform, List<ParsedLine> players, PriceSnapshot snapshot)
+            throws UnsupportedPlatformException, InterruptedException {
+        return refresh(platform, players, snapshot, null);
+    }
+
+    /**
+     * Same as {@link #refresh(Platform, List, PriceSnapshot)}, every player being handed to a listener as soon as
+     * it is fetched.
+     */
+    public PriceDelta refresh(Platform platform, List<ParsedLine> players, PriceSnapshot snapshot, PriceListener listener)
+            throws UnsupportedPlatformException, InterruptedException {
+        return snapshot.apply(players, getPrices(platform, players, listener));
+    }
+
+    /**
+     * Returns a description of every page that could not be fetched during the last call to getPrices.
+     */
+    public List<String> getFailures() {
+        return lastFailures;
+    }
+
+    private String url(Platform platform, ParsedLine line) {
+        String base = baseUrl;
+        if (base != null) return base + String.format(pathPattern, line.getPlayerId());
+
+        return String.format(urlPattern, (platform == PC) ? "futpc" : "futbin", line.getPlayerId());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Downloads and extracts a page once both the per-host and the global limits allow it.
+     * Pages whose cached values are still fresh aren't downloaded at all.
+     */
+    private Callable<Player> fetch(final String url, final ParsedLine line, final List<Platform> markets,
+                                   final SelectorRegistry.PageSelectors selectors,
+                                   final StreamingExtractor streamingExtractor,
+                                   final Instruments instruments, final Metrics.Histogram fetchDuration) {
+        return new Callable<Player>() {
+            @Override
+            public Player call() throws IOException, InterruptedException {
+                ResponseCache cache = responseCache;
+                ResponseCache.Entry cached = (cache == null) ? null : cache.get(url);
+                if (cached != null && !cached.hasPrices(markets)) cached = null;
+                if (cached != null && cache.isFresh(cached)) {
+                    instruments.cacheHits.increment();
+                    return cached.toPlayer(url, line);
+                }
+
+                String host = new URL(url).getHost();
+                CircuitBreaker circuitBreaker = circuitBreaker(host);
+                RetryPolicy retries = retryPolicy;
+
+                for (Integer attempt = 1; ; attempt++) {
+                    if (!circuitBreaker.allowRequest()) {
+                        throw new IOException(String.format("requests to %s are paused after repeated failures.", host));
+                    }
+
+                    try {
+                        Player player = download(url, line, selectors, streamingExtractor, cached, instruments, fetchDuration);
+                        circuitBreaker.recordSuccess();
+                        return player;
+                    } catch (IOException e) {
+                        if (!retries.isRetryable(e)) {
+                            circuitBreaker.recordIgnored();
+                            throw e;
+                        }
+
+                        circuitBreaker.recordFailure();
+                        if (attempt >= retries.getMaxAttempts()) throw e;
+                    }
+
+                    instruments.retries.increment();
+                    Thread.sleep(retries.backoff(attempt));
+                }
+            }
+        };
+    }
+
+    private Player download(String url, ParsedLine line, SelectorRegistry.PageSelectors selectors,
+                            StreamingExtractor streamingExtractor, ResponseCache.Entry cached,
+                            Instruments instruments, Metrics.Histogram fetchDuration)
+            throws IOException, InterruptedException {
+        ResponseCache cache = responseCache;
+        Semaphore permits = hostPermits(new URL(url).getHost());
+        long waitStart = System.nanoTime();
+        permits.acquire();
+        try {
+            rateLimiter.acquire();
+            instruments.waitDuration.recordSince(waitStart);
+
+            long start = System.nanoTime();
             try {
-                doc = Jsoup.connect(url).get();
-            } catch (IOException e) {
-                throw new ConnectException(String.format("Could not connect to \"%s\".", url));
+                instruments.requests.increment();
+                try (Transport.Response response = transport().get(url, conditionalHeaders(cached))) {
+                    Integer status = response.getStatus();
+                    if (cached != null && cache != null && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        instruments.cacheHits.increment();
+                        cache.put(url, cached.revalidated());
+                        return cached.toPlayer(url, line);
+                    }
+                    checkStatus(url, status);
+
+                    InputStream body = new CountingInputStream(response.getBody(), instruments.downloadedBytes);
+                    if (streamingExtractor == null) {
+                        return cache(cache, url, response, extractDocument(url, line, selectors, response, body, instruments));
+                    }
+
+                    long extractStart = System.nanoTime();
+                    RecordingInputStream recorded = new RecordingInputStream(body);
+                    Player player = streamingExtractor.extract(new InputStreamReader(recorded,
+                            charset(response.getCharset())), url, line);
+                    instruments.extractDuration.recordSince(extractStart);
+                    if (player != null) return cache(cache, url, response, player);
+
+                    // The streaming extractor gave up half-way through the page: the DOM path parses what it
+                    // read followed by the rest of the same response.
+                    return cache(cache, url, response, extractDocument(url, line, selectors, response, recorded.replay(), instruments));
+                }
+            } finally {
+                fetchDuration.recordSince(start);
             }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Player extractDocument(String url, ParsedLine line, SelectorRegistry.PageSelectors selectors,
+                                   Transport.Response response, InputStream body, Instruments instruments)
+            throws IOException {
+        long start = System.nanoTime();
+        Document doc = Jsoup.parse(body, response.getCharset(), url);
+        Player player = selectors.extract(doc, url, line);
+        instruments.extractDuration.recordSince(start);
+
+        return player;
+    }
+
+    private Map<String, String> conditionalHeaders(ResponseCache.Entry cached) {
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.getEtag() != null) headers.put("If-None-Match", cached.getEtag());
+            if (cached.getLastModified() != null) headers.put("If-Modified-Since", cached.getLastModified());
+        }
+
+        return headers;
+    }
+
+    private void checkStatus(String url, Integer status) throws IOException {
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new HttpStatusException(String.format("HTTP error %d while fetching \"%s\".", status, url), status);
+        }
+    }
+
+    private Player cache(ResponseCache cache, String url, Transport.Response response, Player player) {
+        if (cache != null) {
+            cache.put(url, ResponseCache.Entry.of(response.getHeader("ETag"), response.getHeader("Last-Modified"), player));
+        }
+
+        return player;
+    }
 
-            String playerName;
-            Long lowestBin;
-            Long lowestBin2;
-            Long lowestBin3;
-
-            switch(platform) {
-                case PC:
-                    playerName = Xsoup.compile("//td/text()").evaluate(doc).list().get(4);
-                    lowestBin  = parseLong(Xsoup.compile("//div[contains(@class, \"lowestBin\")]//span/text()").evaluate(doc).list().get(0));
-                    lowestBin2 = parseLong(Xsoup.compile("//td/text()").evaluate(doc).list().get(0));
-                    lowestBin3 = parseLong(Xsoup.compile("//td/text()").evaluate(doc).list().get(2));
-                    break;
-                case XBOX:
-                    playerName = Xsoup.compile("//table[contains(@id, \"info\")]//tbody//tr").evaluate(doc).getElements().get(0).child(0).childNode(0).toString();
-                    lowestBin  = parseLong(Xsoup.compile("//span[contains(@id, \"xboxlbin\")]/text()").evaluate(doc).list().get(0));
-                    lowestBin2 = -1L;
-                    lowestBin3 = -1L;
-                    break;
-                case PS:
-                    playerName = Xsoup.compile("//table[contains(@id, \"info\")]//tbody//tr").evaluate(doc).getElements().get(0).child(0).childNode(0).toString();
-                    lowestBin  = parseLong(Xsoup.compile("//span[contains(@id, \"pslbin\")]/text()").evaluate(doc).list().get(0));
-                    lowestBin2 = -1L;
-                    lowestBin3 = -1L;
-                    break;
-                default:
-                    throw new UnsupportedPlatformException("");
+    private static Charset charset(String charsetName) {
+        if (charsetName != null) {
+            try {
+                return Charset.forName(charsetName);
+            } catch (IllegalArgumentException e) {
+                // Unknown charset, use the default one.
             }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
 
-            playersList.add(new Player(playerName, url, line.getTargetPrice(),
-                    lowestBin, lowestBin2, lowestBin3, line.getAction()));
+    private CircuitBreaker circuitBreaker(String host) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(host);
+        if (circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_PAUSE);
+            circuitBreaker = circuitBreakers.putIfAbsent(host, created);
+            if (circuitBreaker == null) circuitBreaker = created;
         }
 
-        return playersList;
+        return circuitBreaker;
     }
 
-    private Long parseLong(String s) {
-        return Long.parseLong(s.replace(" ", "").replace(",", ""));
+    private Semaphore hostPermits(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxConnectionsPerHost);
+            permits = hostPermits.putIfAbsent(host, created);
+            if (permits == null) permits = created;
+        }
+
+        return permits;
+    }
+
+    /**
+     * The instruments of a metrics registry recording the fetches.
+     */
+    private static class Instruments {
+        private final Metrics metrics;
+        private final Map<Platform, Metrics.Histogram> fetchDuration = new EnumMap<>(Platform.class);
+        private final Metrics.Histogram waitDuration;
+        private final Metrics.Histogram extractDuration;
+        private final Metrics.Counter downloadedBytes;
+        private final Metrics.Counter requests;
+        private final Metrics.Counter retries;
+        private final Metrics.Counter errors;
+        private final Metrics.Counter cacheHits;
+
+        Instruments(Metrics metrics) {
+            this.metrics = metrics;
+            for (Platform platform : Platform.values()) {
+                fetchDuration.put(platform, metrics.durationHistogram("futbin_fetch_duration_seconds",
+                        "Time taken by the requests of a player's page, extraction included.",
+                        "platform=\"" + platform + "\""));
+            }
+            waitDuration = metrics.durationHistogram("futbin_fetch_wait_seconds",
+                    "Time spent waiting for a connection and the rate limiter before requesting a page.", null);
+            extractDuration = metrics.durationHistogram("futbin_extract_duration_seconds",
+                    "Time spent parsing pages and extracting their prices, reading the body included when streaming.", null);
+            downloadedBytes = metrics.counter("futbin_downloaded_bytes_total", "Bytes of page bodies read, after decompression.", null);
+            requests = metrics.counter("futbin_requests_total", "Requests sent to FutBIN.", null);
+            retries = metrics.counter("futbin_retries_total", "Requests sent again after a failure.", null);
+            errors = metrics.counter("futbin_fetch_errors_total", "Players whose prices could not be fetched.", null);
+            cacheHits = metrics.counter("futbin_cache_hits_total", "Pages answered from the cache, fresh or revalidated.", null);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a page's body.
+     */
+    /**
+     * Keeps a copy of the bytes read, so a page can be parsed again from the start without downloading it twice.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        private byte[] recorded = new byte[8192];
+        private int count = 0;
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                if (count == recorded.length) recorded = Arrays.copyOf(recorded, recorded.length * 2);
+                recorded[count++] = (byte) b;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) record(b, off, read);
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be recorded too.
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void record(byte[] b, int off, int len) {
+            if (count + len > recorded.length) recorded = Arrays.copyOf(recorded, Math.max(recorded.length * 2, count + len));
+            System.arraycopy(b, off, recorded, count, len);
+            count += len;
+        }
+
+        /**
+         * Returns the whole stream again: the bytes read so far followed by the ones not read yet.
+         */
+        InputStream replay() {
+            return new SequenceInputStream(new ByteArrayInputStream(recorded, 0, count), in);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final Metrics.Counter counter;
+
+        CountingInputStream(InputStream in, Metrics.Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) counter.increment();
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) counter.add(read);
+
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) counter.add(skipped);
+
+            return skipped;
+        }
     }
 }
@@ -0,0 +1,172 @@
+package com.dindane.futbinwatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transport built on HttpURLConnection, whose keep-alive cache pools the connections to each host.
+ * Responses are requested compressed and decompressed on the fly.
+ *
+ * The pool is configured process-wide by {@link #configurePool}, which must be called before the
+ * process makes its first HTTP request since the JDK reads the settings only once.
+ */
+public class HttpTransport implements Transport {
+    public static final Integer DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final Integer DEFAULT_READ_TIMEOUT = 10000;
+
+    private static final Integer BUFFER_SIZE = 8192;
+
+    private final Integer connectTimeout;
+    private final Integer readTimeout;
+
+    /**
+     * @param connectTimeout connection timeout in milliseconds
+     * @param readTimeout    read timeout in milliseconds
+     */
+    public HttpTransport(Integer connectTimeout, Integer readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Enables keep-alive and sets the number of idle connections kept per host, unless the
+     * http.maxConnections system property was already given.
+     */
+    public static void configurePool(Integer idleConnections) {
+        System.setProperty("http.keepAlive", "true");
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(idleConnections));
+        }
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        return new HttpResponse(connection);
+    }
+
+    private static class HttpResponse implements Response {
+        private final HttpURLConnection connection;
+        private InputStream raw;
+        private InputStream body;
+
+        HttpResponse(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Integer getStatus() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public String getCharset() {
+            String contentType = connection.getContentType();
+            if (contentType == null) return null;
+
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase(Locale.ENGLISH).startsWith("charset=")) {
+                    return parameter.substring("charset=".length()).replace("\"", "");
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body != null) return body;
+
+            InputStream raw = getRawBody();
+            String encoding = connection.getContentEncoding();
+            if (encoding == null || !hasContent()) {
+                body = raw;
+            } else if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+                body = new GZIPInputStream(raw, BUFFER_SIZE);
+            } else if (encoding.equalsIgnoreCase("deflate")) {
+                body = inflate(raw);
+            } else {
+                body = raw;
+            }
+
+            return body;
+        }
+
+        private InputStream getRawBody() throws IOException {
+            if (raw != null) return raw;
+
+            InputStream in = (getStatus() >= 400) ? connection.getErrorStream() : connection.getInputStream();
+            raw = (in == null) ? new ByteArrayInputStream(new byte[0]) : new PushbackInputStream(in, 1);
+
+            return raw;
+        }
+
+        /**
+         * Tells whether there is a body to decode. A 304 or an empty body can carry a Content-Encoding
+         * but has no compressed data, which the decoders would fail on.
+         */
+        private Boolean hasContent() throws IOException {
+            Integer status = getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED || status == HttpURLConnection.HTTP_NO_CONTENT) return false;
+            if (!(raw instanceof PushbackInputStream)) return false;
+
+            PushbackInputStream in = (PushbackInputStream) raw;
+            int first = in.read();
+            if (first == -1) return false;
+
+            in.unread(first);
+            return true;
+        }
+
+        /**
+         * "deflate" is supposed to be zlib-wrapped, but some servers send raw deflate data.
+         */
+        private InputStream inflate(InputStream raw) throws IOException {
+            PushbackInputStream in = new PushbackInputStream(raw, 2);
+            int first = in.read();
+            int second = in.read();
+            if (second != -1) in.unread(second);
+            if (first != -1) in.unread(first);
+
+            Boolean zlib = first != -1 && second != -1 && (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+
+            return new InflaterInputStream(in, new Inflater(!zlib), BUFFER_SIZE);
+        }
+
+        /**
+         * Closing the body, rather than disconnecting, hands the connection back to the keep-alive cache.
+         */
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            } else {
+                // Nothing was read, there is no point in decoding the body just to close it.
+                getRawBody().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dindane.futbinwatcher;
+
+/**
+ * Helpers writing JSON by hand.
+ */
+final class Json {
+    private Json() {
+    }
+
+    /**
+     * Returns a string as a JSON string literal, or null.
+     */
+    static String quote(String s) {
+        if (s == null) return "null";
+
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':  quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a JSON object per player, one per line. Unknown prices are null.
+ */
+public class JsonLinesPriceWriter implements PriceWriter {
+    private final Writer out;
+    private final List<Platform> markets;
+
+    /**
+     * @param out should be buffered, every field being written separately
+     */
+    public JsonLinesPriceWriter(Writer out, List<Platform> markets) {
+        this.out = out;
+        this.markets = markets;
+    }
+
+    @Override
+    public void write(ParsedLine line, Player player, Long timestamp) throws IOException {
+        out.write("{\"timestamp\":");
+        out.write(timestamp.toString());
+        out.write(",\"id\":");
+        out.write(Json.quote(line.getPlayerId()));
+        out.write(",\"name\":");
+        out.write(Json.quote(player.getName()));
+        out.write(",\"action\":\"");
+        out.write(line.getAction().toString());
+        out.write("\",\"targetPrice\":");
+        writePrice(line.getTargetPrice());
+        out.write(",\"lowestBIN\":{");
+        for (Integer i = 0; i < markets.size(); i++) {
+            if (i > 0) out.write(',');
+            out.write('"');
+            out.write(markets.get(i).toString());
+            out.write("\":");
+            writePrice(player.getLowestBIN(markets.get(i)));
+        }
+        out.write("},\"lowestBIN2\":");
+        writePrice(player.getLowestBIN2());
+        out.write(",\"lowestBIN3\":");
+        writePrice(player.getLowestBIN3());
+        out.write(",\"stale\":");
+        out.write(player.isStale().toString());
+        out.write("}\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writePrice(Long price) throws IOException {
+        out.write((price == null || price < 0) ? "null" : price.toString());
+    }
+}
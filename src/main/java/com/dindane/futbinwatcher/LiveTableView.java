@@ -0,0 +1,168 @@
+package com.dindane.futbinwatcher;
+
+import com.bethecoder.ascii_table.ASCIITable;
+import com.bethecoder.ascii_table.ASCIITableCell;
+import com.bethecoder.ascii_table.ASCIITableHeader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Keeps tables on a terminal's screen and updates them in place.
+ *
+ * The first frame is drawn whole. The next ones only rewrite the cells whose values changed, moving the
+ * cursor to them with ANSI escape codes, so the output of a refresh is proportional to its changes. The
+ * frame is drawn whole again when its layout changes: a table or a row added or removed, a column resized.
+ *
+ * The frame is drawn from the top of the screen and must fit in the terminal to be updated in place.
+ * What is printed after a frame stays below it until the next one.
+ */
+class LiveTableView {
+    private static final String CSI = "\u001B[";
+
+    private final PrintStream out;
+    private final StringBuilder frame = new StringBuilder();
+
+    /**
+     * The tables on the screen, their column widths, the line of their first data row, and the number
+     * of lines of the frame.
+     */
+    private Table[] tables;
+    private int[][] widths;
+    private int[] firstRows;
+    private int height;
+
+    LiveTableView(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Displays a title line followed by tables.
+     */
+    void draw(String title, Table... newTables) throws IOException {
+        int[][] newWidths = new int[newTables.length][];
+        for (Integer i = 0; i < newTables.length; i++) {
+            newWidths[i] = ASCIITable.getInstance().getColumnWidths(newTables[i].header, newTables[i].data);
+        }
+
+        frame.setLength(0);
+        if (sameLayout(newTables, newWidths)) {
+            update(title, newTables);
+        } else {
+            redraw(title, newTables);
+        }
+        tables = newTables;
+        widths = newWidths;
+
+        out.append(frame);
+        out.flush();
+    }
+
+    private void redraw(String title, Table[] newTables) throws IOException {
+        frame.append(CSI).append('H').append(CSI).append("2J");
+        frame.append(title).append("\n\n");
+
+        firstRows = new int[newTables.length];
+        int line = 2;
+        for (Integer i = 0; i < newTables.length; i++) {
+            Table table = newTables[i];
+            Boolean hasHeader = table.header != null && table.header.length > 0;
+
+            // The top border, the header and the line under it come first.
+            firstRows[i] = line + (hasHeader ? 3 : 1);
+            ASCIITable.getInstance().writeTable(table.header, table.data, frame);
+            frame.append('\n');
+            line = firstRows[i] + table.data.length + 2;
+
+            if (table.note != null) {
+                frame.append(table.note).append("\n\n");
+                line += 2;
+            }
+        }
+        height = line;
+    }
+
+    private void update(String title, Table[] newTables) throws IOException {
+        frame.append(CSI).append("1;1H").append(title).append(CSI).append('K');
+
+        for (Integer i = 0; i < newTables.length; i++) {
+            CharSequence[][] previous = tables[i].data;
+            CharSequence[][] data = newTables[i].data;
+
+            for (int row = 0; row < data.length; row++) {
+                // Rows that didn't change are usually the same arrays.
+                if (data[row] == previous[row]) continue;
+
+                int column = 3;
+                for (int j = 0; j < widths[i].length; j++) {
+                    CharSequence cell = cell(data[row], j);
+                    if (!sameCell(cell(previous[row], j), cell)) {
+                        frame.append(CSI).append(firstRows[i] + row + 1).append(';').append(column).append('H');
+                        ASCIITable.getInstance().writeCell(cell, widths[i][j], dataAlign(newTables[i].header, j), frame);
+                    }
+                    column += widths[i][j] + 3;
+                }
+            }
+        }
+
+        // Leaves the cursor under the frame, clearing what was printed there since the last one.
+        frame.append(CSI).append(height + 1).append(";1H").append(CSI).append('J');
+    }
+
+    private Boolean sameLayout(Table[] newTables, int[][] newWidths) {
+        if (tables == null || tables.length != newTables.length) return false;
+
+        for (Integer i = 0; i < newTables.length; i++) {
+            if (tables[i].data.length != newTables[i].data.length) return false;
+            if (!Arrays.equals(widths[i], newWidths[i])) return false;
+            if (!Objects.equals(tables[i].note, newTables[i].note)) return false;
+            if (!headerNames(tables[i].header).equals(headerNames(newTables[i].header))) return false;
+        }
+
+        return true;
+    }
+
+    private static String headerNames(ASCIITableHeader[] header) {
+        if (header == null) return "";
+
+        StringBuilder names = new StringBuilder();
+        for (ASCIITableHeader column : header) names.append(column.getHeaderName()).append('|');
+
+        return names.toString();
+    }
+
+    private static CharSequence cell(CharSequence[] row, int column) {
+        return (column < row.length) ? row[column] : "";
+    }
+
+    private static Boolean sameCell(CharSequence a, CharSequence b) {
+        if (a == b) return true;
+        if ((a instanceof ASCIITableCell) != (b instanceof ASCIITableCell)) return false;
+        if (a instanceof ASCIITableCell && !Objects.equals(((ASCIITableCell) a).getStyle(), ((ASCIITableCell) b).getStyle())) {
+            return false;
+        }
+
+        return a.toString().contentEquals(b);
+    }
+
+    private static int dataAlign(ASCIITableHeader[] header, int column) {
+        return (header != null && column < header.length) ? header[column].getDataAlign() : ASCIITable.DEFAULT_DATA_ALIGN;
+    }
+
+    /**
+     * A table of the frame, and the note displayed under it or null.
+     */
+    static class Table {
+        private final ASCIITableHeader[] header;
+        private final CharSequence[][] data;
+        private final String note;
+
+        Table(ASCIITableHeader[] header, CharSequence[][] data, String note) {
+            this.header = header;
+            this.data = data;
+            this.note = note;
+        }
+    }
+}
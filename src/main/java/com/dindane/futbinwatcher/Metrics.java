@@ -0,0 +1,258 @@
+package com.dindane.futbinwatcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, gauges and histograms describing what the watcher spends its time on, exported in the
+ * Prometheus text format.
+ *
+ * Instruments are registered once, up front. Recording a value only updates atomic longs: it neither
+ * locks nor allocates, so the fetching threads can record freely.
+ */
+public class Metrics {
+    /**
+     * Upper bounds of the duration histograms, in seconds.
+     */
+    public static final double[] DURATION_BUCKETS =
+            {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600};
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public synchronized Counter counter(String name, String help, String labels) {
+        Counter counter = new Counter(labels);
+        family(name, help, "counter").instruments.add(counter);
+
+        return counter;
+    }
+
+    public synchronized Gauge gauge(String name, String help, String labels) {
+        Gauge gauge = new Gauge(labels);
+        family(name, help, "gauge").instruments.add(gauge);
+
+        return gauge;
+    }
+
+    /**
+     * Registers a histogram of durations, recorded in nanoseconds and exported in seconds.
+     */
+    public synchronized Histogram durationHistogram(String name, String help, String labels) {
+        Histogram histogram = new Histogram(labels, DURATION_BUCKETS, TimeUnit.SECONDS.toNanos(1));
+        family(name, help, "histogram").instruments.add(histogram);
+
+        return histogram;
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(String.format("%s is already registered as a %s.", name, family.type));
+        }
+
+        return family;
+    }
+
+    /**
+     * Writes every instrument in the Prometheus text exposition format.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        List<Family> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.values());
+        }
+
+        for (Family family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            List<Instrument> instruments;
+            synchronized (this) {
+                instruments = new ArrayList<>(family.instruments);
+            }
+            for (Instrument instrument : instruments) instrument.writeTo(family.name, out);
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Replaces a file with the current values, atomically so a scraper never reads half of it.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, toPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static String series(String name, String labels, String extraLabel) {
+        if (labels == null && extraLabel == null) return name;
+        if (labels == null) return name + "{" + extraLabel + "}";
+        if (extraLabel == null) return name + "{" + labels + "}";
+
+        return name + "{" + labels + "," + extraLabel + "}";
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) return String.valueOf((long) value);
+
+        return String.valueOf(value);
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final List<Instrument> instruments = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private abstract static class Instrument {
+        /**
+         * Labels of the instrument, e.g. platform="XBOX", or null.
+         */
+        protected final String labels;
+
+        Instrument(String labels) {
+            this.labels = labels;
+        }
+
+        abstract void writeTo(String name, Appendable out) throws IOException;
+    }
+
+    public static class Counter extends Instrument {
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String labels) {
+            super(labels);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long amount) {
+            value.addAndGet(amount);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        void writeTo(String name, Appendable out) throws IOException {
+            out.append(series(name, labels, null)).append(' ').append(String.valueOf(value.get())).append('\n');
+        }
+    }
+
+    public static class Gauge extends Instrument {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+        private Gauge(String labels) {
+            super(labels);
+        }
+
+        public void set(double value) {
+            bits.set(Double.doubleToRawLongBits(value));
+        }
+
+        public double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        @Override
+        void writeTo(String name, Appendable out) throws IOException {
+            out.append(series(name, labels, null)).append(' ').append(format(get())).append('\n');
+        }
+    }
+
+    /**
+     * Counts values in fixed buckets. The counts are kept per bucket and made cumulative on export.
+     */
+    public static class Histogram extends Instrument {
+        private final double[] bounds;
+        /**
+         * Bucket bounds in recorded units, the last bucket being +Inf.
+         */
+        private final long[] limits;
+        private final long unit;
+        private final AtomicLongArray counts;
+        private final AtomicLong sum = new AtomicLong();
+
+        private Histogram(String labels, double[] bounds, long unit) {
+            super(labels);
+            this.bounds = bounds;
+            this.unit = unit;
+            this.limits = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) limits[i] = (long) (bounds[i] * unit);
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < limits.length && value > limits[bucket]) bucket++;
+
+            counts.incrementAndGet(bucket);
+            sum.addAndGet(value);
+        }
+
+        /**
+         * Records the time elapsed since a {@link System#nanoTime()} reading.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) count += counts.get(i);
+
+            return count;
+        }
+
+        @Override
+        void writeTo(String name, Appendable out) throws IOException {
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts.get(i);
+                out.append(series(name + "_bucket", labels, "le=\"" + format(bounds[i]) + "\""))
+                        .append(' ').append(String.valueOf(cumulative)).append('\n');
+            }
+            cumulative += counts.get(bounds.length);
+            out.append(series(name + "_bucket", labels, "le=\"+Inf\"")).append(' ').append(String.valueOf(cumulative)).append('\n');
+            out.append(series(name + "_sum", labels, null)).append(' ').append(format(sum.get() / (double) unit)).append('\n');
+            out.append(series(name + "_count", labels, null)).append(' ').append(String.valueOf(cumulative)).append('\n');
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.dindane.futbinwatcher;
+
+public enum OutputFormat {
+    /**
+     * ASCII tables, refreshed every cycle.
+     */
+    TABLE,
+    /**
+     * One CSV record per refreshed player, after a header line.
+     */
+    CSV,
+    /**
+     * One JSON object per line and per refreshed player.
+     */
+    JSONL
+}
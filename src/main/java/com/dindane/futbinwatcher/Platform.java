@@ -1,5 +1,20 @@
 package com.dindane.futbinwatcher;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public enum  Platform {
-    PC, XBOX, PS
+    PC, XBOX, PS,
+    /**
+     * Both consoles at once, their prices being on the same FutBIN page.
+     */
+    ALL;
+
+    /**
+     * Returns the markets whose prices are watched when this platform is selected.
+     */
+    public List<Platform> markets() {
+        return (this == ALL) ? Arrays.asList(XBOX, PS) : Collections.singletonList(this);
+    }
 }
@@ -1,24 +1,71 @@
 package com.dindane.futbinwatcher;
 
 import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class Player {
     private final String name;
     private final String url;
     private final Long targetPrice;
     private final Long lowestBIN;
+    private final Map<Platform, Long> lowestBINs;
     private final Long lowestBIN2;
     private final Long lowestBIN3;
     private final Action action;
+    private final Boolean stale;
 
     public Player(String name, String url, Long targetPrice, Long lowestBIN, Long lowestBIN2, Long lowestBIN3, Action action) {
         this.name = name;
         this.url = url;
         this.targetPrice = targetPrice;
         this.lowestBIN = lowestBIN;
+        this.lowestBINs = Collections.emptyMap();
+        this.lowestBIN2 = lowestBIN2;
+        this.lowestBIN3 = lowestBIN3;
+        this.action = action;
+        this.stale = false;
+    }
+
+    /**
+     * Creates a player whose lowest BIN is known on one or several markets.
+     * {@link #getLowestBIN()} is only set when there is a single market.
+     */
+    public Player(String name, String url, Long targetPrice, Map<Platform, Long> lowestBINs, Long lowestBIN2, Long lowestBIN3, Action action) {
+        this.name = name;
+        this.url = url;
+        this.targetPrice = targetPrice;
+        Map<Platform, Long> prices = new EnumMap<>(Platform.class);
+        prices.putAll(lowestBINs);
+        this.lowestBINs = Collections.unmodifiableMap(prices);
+        this.lowestBIN = (lowestBINs.size() == 1) ? lowestBINs.values().iterator().next() : null;
         this.lowestBIN2 = lowestBIN2;
         this.lowestBIN3 = lowestBIN3;
         this.action = action;
+        this.stale = false;
+    }
+
+    private Player(Player player, Long targetPrice, Action action) {
+        this.name = player.name;
+        this.url = player.url;
+        this.targetPrice = targetPrice;
+        this.lowestBIN = player.lowestBIN;
+        this.lowestBINs = player.lowestBINs;
+        this.lowestBIN2 = player.lowestBIN2;
+        this.lowestBIN3 = player.lowestBIN3;
+        this.action = action;
+        this.stale = true;
+    }
+
+    /**
+     * Returns a copy of this player, for the given watch list line, whose prices are marked as outdated.
+     */
+    Player stale(ParsedLine line) {
+        return new Player(this, line.getTargetPrice(), line.getAction());
     }
 
     public Long priceDifference() {
@@ -37,6 +84,17 @@ public class Player {
         return lowestBIN;
     }
 
+    /**
+     * Returns the lowest BIN on a given market.
+     */
+    public Long getLowestBIN(Platform platform) {
+        return lowestBINs.isEmpty() ? lowestBIN : lowestBINs.get(platform);
+    }
+
+    public Map<Platform, Long> getLowestBINs() {
+        return lowestBINs;
+    }
+
     public Long getLowestBIN2() {
         return lowestBIN2;
     }
@@ -49,7 +107,42 @@ public class Player {
         return action;
     }
 
+    /**
+     * Returns true when the player's page could not be fetched and its prices are the last known ones.
+     */
+    public Boolean isStale() {
+        return stale;
+    }
+
     public String getUrl() {
         return url;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Player player = (Player) o;
+
+        return equal(name, player.name) && equal(url, player.url) && equal(targetPrice, player.targetPrice) &&
+                equal(lowestBIN, player.lowestBIN) && lowestBINs.equals(player.lowestBINs) && equal(lowestBIN2, player.lowestBIN2) &&
+                equal(lowestBIN3, player.lowestBIN3) && action == player.action &&
+                stale.equals(player.stale);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[]{name, url, targetPrice, lowestBIN, lowestBINs, lowestBIN2, lowestBIN3, action, stale});
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Player{name=%s, url=%s, targetPrice=%s, lowestBIN=%s, lowestBINs=%s, lowestBIN2=%s, lowestBIN3=%s, action=%s, stale=%s}",
+                name, url, targetPrice, lowestBIN, lowestBINs, lowestBIN2, lowestBIN3, action, stale);
+    }
+
+    private static Boolean equal(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
 }
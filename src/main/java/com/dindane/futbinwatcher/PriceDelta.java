@@ -0,0 +1,61 @@
+package com.dindane.futbinwatcher;
+
+import java.util.Arrays;
+
+/**
+ * Slots of a {@link PriceSnapshot} that moved during a refresh.
+ *
+ * A slot appears when its prices become known for the first time, disappears when its prices
+ * can't be refreshed anymore and only the last known ones remain, and changes when any of its
+ * lowest BINs changed or when it's back after having disappeared.
+ */
+public class PriceDelta {
+    private final int[] appeared;
+    private final int[] changed;
+    private final int[] disappeared;
+
+    PriceDelta(int[] appeared, int[] changed, int[] disappeared) {
+        this.appeared = appeared;
+        this.changed = changed;
+        this.disappeared = disappeared;
+    }
+
+    public int[] getAppeared() {
+        return appeared;
+    }
+
+    public int[] getChanged() {
+        return changed;
+    }
+
+    public int[] getDisappeared() {
+        return disappeared;
+    }
+
+    /**
+     * Returns every slot of the delta, sorted.
+     */
+    public int[] slots() {
+        int[] slots = new int[size()];
+        System.arraycopy(appeared, 0, slots, 0, appeared.length);
+        System.arraycopy(changed, 0, slots, appeared.length, changed.length);
+        System.arraycopy(disappeared, 0, slots, appeared.length + changed.length, disappeared.length);
+        Arrays.sort(slots);
+
+        return slots;
+    }
+
+    public int size() {
+        return appeared.length + changed.length + disappeared.length;
+    }
+
+    public Boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PriceDelta{appeared=%s, changed=%s, disappeared=%s}",
+                Arrays.toString(appeared), Arrays.toString(changed), Arrays.toString(disappeared));
+    }
+}
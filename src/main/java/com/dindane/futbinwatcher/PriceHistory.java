@@ -0,0 +1,399 @@
+package com.dindane.futbinwatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only history of the prices seen for every player, stored in memory-mapped segment files.
+ *
+ * Every sample is a fixed-width record (player, platform, time, lowest BINs) written straight into the
+ * mapped segment, without any per-sample object. Each record points to the previous record of the same
+ * player and platform in its segment, and a full segment gets a sorted index of the last record of each
+ * of them, so a player's series is read by following its chain instead of scanning the segments.
+ *
+ * Layout of a segment: a {@link #HEADER_SIZE} bytes header (magic, version, capacity, record count,
+ * first and last timestamps) followed by {@link #RECORD_SIZE} bytes records.
+ */
+public class PriceHistory implements Closeable {
+    public static final Integer DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+
+    static final Integer HEADER_SIZE = 64;
+    static final Integer RECORD_SIZE = 48;
+    private static final Integer INDEX_ENTRY_SIZE = 16;
+
+    private static final int MAGIC = 0x46424848;
+    private static final int VERSION = 1;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int FIRST_TIMESTAMP_OFFSET = 16;
+    private static final int LAST_TIMESTAMP_OFFSET = 24;
+
+    private static final int KEY = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int LOWEST_BIN = 16;
+    private static final int LOWEST_BIN_2 = 24;
+    private static final int LOWEST_BIN_3 = 32;
+    private static final int PREVIOUS = 40;
+
+    private final Path directory;
+    private final int capacity;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private Boolean closed = false;
+
+    public PriceHistory(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * @param segmentCapacity number of records per segment file
+     */
+    public PriceHistory(Path directory, Integer segmentCapacity) throws IOException {
+        if (segmentCapacity < 1) throw new IllegalArgumentException("A segment must hold at least one record.");
+        // A segment is mapped in a single buffer, whose positions are ints.
+        if (segmentCapacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException(String.format("A segment can hold at most %d records.",
+                    (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE));
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.capacity = segmentCapacity;
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*.seg")) {
+            for (Path file : stream) files.add(file);
+        }
+        Collections.sort(files);
+
+        for (Path file : files) segments.add(Segment.open(file, segmentNumber(file)));
+        if (!segments.isEmpty() && !segments.get(segments.size() - 1).isFull()) {
+            active = segments.get(segments.size() - 1);
+            active.openForAppend();
+        }
+    }
+
+    /**
+     * Appends a sample. Samples of a player are expected in chronological order.
+     * Samples appended once the history is closed are dropped.
+     */
+    public synchronized void append(long playerId, Platform platform, long timestamp,
+                                    long lowestBIN, long lowestBIN2, long lowestBIN3) throws IOException {
+        if (closed) return;
+
+        if (active == null || active.isFull()) {
+            if (active != null) active.seal();
+            Integer number = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+            active = Segment.create(directory.resolve(String.format("%010d.seg", number)), number, capacity);
+            segments.add(active);
+        }
+
+        active.append(key(playerId, platform), timestamp, lowestBIN, lowestBIN2, lowestBIN3);
+    }
+
+    /**
+     * Reads the samples of a player between two timestamps, both included, in chronological order.
+     */
+    public synchronized void read(long playerId, Platform platform, long from, long to, SampleVisitor visitor)
+            throws IOException {
+        long key = key(playerId, platform);
+
+        for (Segment segment : segments) {
+            if (segment.count() == 0 || segment.lastTimestamp() < from || segment.firstTimestamp() > to) continue;
+
+            int[] records = segment.chain(key);
+            for (Integer i = records.length - 1; i >= 0; i--) {
+                int position = segment.position(records[i]);
+                long timestamp = segment.data.getLong(position + TIMESTAMP);
+                if (timestamp < from || timestamp > to) continue;
+
+                visitor.sample(timestamp, segment.data.getLong(position + LOWEST_BIN),
+                        segment.data.getLong(position + LOWEST_BIN_2), segment.data.getLong(position + LOWEST_BIN_3));
+            }
+        }
+    }
+
+    /**
+     * Writes the appended samples to the disk. The OS does it anyway, this only forces it.
+     */
+    public synchronized void flush() {
+        if (active != null) active.data.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        flush();
+        for (Segment segment : segments) segment.close();
+        segments.clear();
+        active = null;
+    }
+
+    /**
+     * Returns the numeric FutBIN id at the start of a player id such as "4610/luka-modric", or null.
+     */
+    static Long playerNumber(String playerId) {
+        Integer end = 0;
+        while (end < playerId.length() && end < 18 && Character.isDigit(playerId.charAt(end))) end++;
+
+        return (end == 0) ? null : Long.parseLong(playerId.substring(0, end));
+    }
+
+    private static long key(long playerId, Platform platform) {
+        return (playerId << 3) | platform.ordinal();
+    }
+
+    private static Integer segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - ".seg".length()));
+    }
+
+    public interface SampleVisitor {
+        void sample(long timestamp, long lowestBIN, long lowestBIN2, long lowestBIN3);
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final Integer number;
+        private final FileChannel channel;
+        private final MappedByteBuffer data;
+
+        /**
+         * Last record of every key, while the segment is appended to.
+         */
+        private LongIntMap heads;
+        /**
+         * Sorted (key, last record) pairs, once the segment is full.
+         */
+        private MappedByteBuffer index;
+
+        private Segment(Path file, Integer number, FileChannel channel, MappedByteBuffer data) {
+            this.file = file;
+            this.number = number;
+            this.channel = channel;
+            this.data = data;
+        }
+
+        static Segment open(Path file, Integer number) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                channel.close();
+                throw new IOException(String.format("\"%s\" is not a price history segment.", file));
+            }
+
+            return new Segment(file, number, channel, data);
+        }
+
+        static Segment create(Path file, Integer number, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE_NEW);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * RECORD_SIZE);
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.putInt(CAPACITY_OFFSET, capacity);
+            data.putInt(COUNT_OFFSET, 0);
+
+            Segment segment = new Segment(file, number, channel, data);
+            segment.heads = new LongIntMap();
+            return segment;
+        }
+
+        void openForAppend() throws IOException {
+            heads = new LongIntMap();
+            for (Integer i = 0; i < count(); i++) heads.put(data.getLong(position(i) + KEY), i);
+        }
+
+        void append(long key, long timestamp, long lowestBIN, long lowestBIN2, long lowestBIN3) {
+            int record = count();
+            int position = position(record);
+
+            data.putLong(position + KEY, key);
+            data.putLong(position + TIMESTAMP, timestamp);
+            data.putLong(position + LOWEST_BIN, lowestBIN);
+            data.putLong(position + LOWEST_BIN_2, lowestBIN2);
+            data.putLong(position + LOWEST_BIN_3, lowestBIN3);
+            data.putInt(position + PREVIOUS, heads.get(key));
+            heads.put(key, record);
+
+            if (record == 0) data.putLong(FIRST_TIMESTAMP_OFFSET, timestamp);
+            data.putLong(LAST_TIMESTAMP_OFFSET, Math.max(timestamp, data.getLong(LAST_TIMESTAMP_OFFSET)));
+            // Written last, so a record is only visible once complete.
+            data.putInt(COUNT_OFFSET, record + 1);
+        }
+
+        /**
+         * Writes the index of the full segment, used by the readers from now on.
+         */
+        void seal() throws IOException {
+            long[] keys = heads.keys();
+            Arrays.sort(keys);
+
+            Path indexFile = indexFile();
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = out.map(FileChannel.MapMode.READ_WRITE, 0, (long) keys.length * INDEX_ENTRY_SIZE);
+                for (Integer i = 0; i < keys.length; i++) {
+                    buffer.putLong(i * INDEX_ENTRY_SIZE, keys[i]);
+                    buffer.putInt(i * INDEX_ENTRY_SIZE + 8, heads.get(keys[i]));
+                }
+                buffer.force();
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            data.force();
+            heads = null;
+        }
+
+        /**
+         * Returns the records of a key, most recent first.
+         */
+        int[] chain(long key) throws IOException {
+            int record = head(key);
+            int[] records = new int[8];
+            Integer size = 0;
+
+            while (record >= 0) {
+                if (size == records.length) records = Arrays.copyOf(records, size * 2);
+                records[size++] = record;
+                record = data.getInt(position(record) + PREVIOUS);
+            }
+
+            return Arrays.copyOf(records, size);
+        }
+
+        private int head(long key) throws IOException {
+            if (heads != null) return heads.get(key);
+
+            if (index == null) {
+                if (!Files.isRegularFile(indexFile())) {
+                    // The process stopped while sealing the segment.
+                    openForAppend();
+                    seal();
+                }
+                try (FileChannel in = FileChannel.open(indexFile(), StandardOpenOption.READ)) {
+                    index = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                }
+            }
+
+            int low = 0;
+            int high = index.capacity() / INDEX_ENTRY_SIZE - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleKey = index.getLong(middle * INDEX_ENTRY_SIZE);
+                if (middleKey < key) low = middle + 1;
+                else if (middleKey > key) high = middle - 1;
+                else return index.getInt(middle * INDEX_ENTRY_SIZE + 8);
+            }
+
+            return -1;
+        }
+
+        int count() {
+            return data.getInt(COUNT_OFFSET);
+        }
+
+        Boolean isFull() {
+            return count() >= data.getInt(CAPACITY_OFFSET);
+        }
+
+        long firstTimestamp() {
+            return data.getLong(FIRST_TIMESTAMP_OFFSET);
+        }
+
+        long lastTimestamp() {
+            return data.getLong(LAST_TIMESTAMP_OFFSET);
+        }
+
+        int position(int record) {
+            return HEADER_SIZE + record * RECORD_SIZE;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        private Path indexFile() {
+            return file.resolveSibling(file.getFileName().toString().replace(".seg", ".idx"));
+        }
+    }
+
+    /**
+     * Open addressing map of long keys to int values, -1 meaning absent, so that appending doesn't box.
+     */
+    private static class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private boolean[] used = new boolean[1024];
+        private int size = 0;
+
+        int get(long key) {
+            int slot = slot(keys, used, key);
+            return used[slot] ? values[slot] : -1;
+        }
+
+        void put(long key, int value) {
+            int slot = slot(keys, used, key);
+            if (!used[slot]) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = slot(keys, used, key);
+                }
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        long[] keys() {
+            long[] result = new long[size];
+            int i = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (used[slot]) result[i++] = keys[slot];
+            }
+
+            return result;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (!oldUsed[slot]) continue;
+                int newSlot = slot(keys, used, oldKeys[slot]);
+                used[newSlot] = true;
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+
+        private static int slot(long[] keys, boolean[] used, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+            while (used[slot] && keys[slot] != key) slot = (slot + 1) & mask;
+
+            return slot;
+        }
+    }
+}
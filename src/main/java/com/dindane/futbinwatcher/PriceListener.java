@@ -0,0 +1,14 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+/**
+ * Receives the prices of the players as soon as they are fetched, in watch list order, on the thread
+ * that asked for them.
+ */
+public interface PriceListener {
+    /**
+     * @param player the player's prices, stale if they could not be refreshed, or null if they were never known
+     */
+    void onPrices(ParsedLine line, Player player);
+}
@@ -0,0 +1,349 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latest known prices of a watch list, stored by column in primitive arrays.
+ *
+ * Every line of the watch list gets a slot, and each price is a long in its column, so keeping or
+ * summing the prices of tens of thousands of cards doesn't box anything. Unknown prices are {@link #UNKNOWN}.
+ *
+ * Lines can be added and removed as the watch list is edited. A removed line's slot is emptied and given
+ * to the next line added, the slots of the other lines never move.
+ */
+public class PriceSnapshot {
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final int UNCHANGED = 0;
+    private static final int APPEARED = 1;
+    private static final int CHANGED = 2;
+    private static final int DISAPPEARED = 3;
+
+    private final List<Platform> markets;
+    private final Map<ParsedLine, Integer> slots = new IdentityHashMap<>();
+    private int size = 0;
+    /**
+     * Emptied slots, reused by the next lines added.
+     */
+    private int[] free = new int[0];
+    private int freeCount = 0;
+    /**
+     * Slots in watch list order.
+     */
+    private int[] order = new int[0];
+
+    private ParsedLine[] lines;
+    /**
+     * Numeric FutBIN id of the lines' players, or {@link #UNKNOWN} if the player id doesn't start with one.
+     */
+    private long[] playerNumbers;
+    private long[] targetPrices;
+    private byte[] actions;
+    /**
+     * One column per market, in the order of {@link Platform#markets()}.
+     */
+    private long[][] lowestBINs;
+    private long[] lowestBINs2;
+    private long[] lowestBINs3;
+    private boolean[] known;
+    private boolean[] stale;
+    private String[] names;
+
+    public PriceSnapshot(Platform platform, List<ParsedLine> lines) {
+        this.markets = platform.markets();
+        allocate(Math.max(16, lines.size()));
+
+        for (ParsedLine line : lines) add(line);
+        order(lines);
+    }
+
+    /**
+     * Gives a slot to a new line of the watch list and returns it.
+     * The line is displayed once {@link #order} is called with it.
+     */
+    public int add(ParsedLine line) {
+        Integer existing = slots.get(line);
+        if (existing != null) return existing;
+
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (size == targetPrices.length) allocate(size * 2);
+            slot = size++;
+        }
+        slots.put(line, slot);
+        lines[slot] = line;
+        Long playerNumber = PriceHistory.playerNumber(line.getPlayerId());
+        playerNumbers[slot] = (playerNumber == null) ? UNKNOWN : playerNumber;
+        targetPrices[slot] = line.getTargetPrice();
+        actions[slot] = (byte) line.getAction().ordinal();
+
+        return slot;
+    }
+
+    /**
+     * Forgets a line removed from the watch list. Its slot is empty until another line is added, and that
+     * line is unknown until its prices appear in a {@link PriceDelta}.
+     */
+    public void remove(ParsedLine line) {
+        Integer slot = slots.remove(line);
+        if (slot == null) return;
+
+        lines[slot] = null;
+        names[slot] = null;
+        known[slot] = false;
+        stale[slot] = false;
+        for (long[] column : lowestBINs) column[slot] = UNKNOWN;
+        lowestBINs2[slot] = UNKNOWN;
+        lowestBINs3[slot] = UNKNOWN;
+
+        if (freeCount == free.length) free = Arrays.copyOf(free, Math.max(16, free.length * 2));
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Sets the order in which the slots are listed, from the watch list.
+     */
+    public void order(List<ParsedLine> lines) {
+        int[] newOrder = new int[lines.size()];
+        int count = 0;
+        for (ParsedLine line : lines) {
+            Integer slot = slots.get(line);
+            if (slot != null) newOrder[count++] = slot;
+        }
+
+        order = Arrays.copyOf(newOrder, count);
+    }
+
+    /**
+     * Returns the slot of a watch list line, or -1 if the line isn't part of the snapshot.
+     */
+    public int slot(ParsedLine line) {
+        Integer slot = slots.get(line);
+        return (slot == null) ? -1 : slot;
+    }
+
+    private void allocate(int capacity) {
+        int previous = size;
+
+        lines = (lines == null) ? new ParsedLine[capacity] : Arrays.copyOf(lines, capacity);
+        playerNumbers = (playerNumbers == null) ? new long[capacity] : Arrays.copyOf(playerNumbers, capacity);
+        targetPrices = (targetPrices == null) ? new long[capacity] : Arrays.copyOf(targetPrices, capacity);
+        actions = (actions == null) ? new byte[capacity] : Arrays.copyOf(actions, capacity);
+        if (lowestBINs == null) lowestBINs = new long[markets.size()][];
+        for (Integer i = 0; i < markets.size(); i++) lowestBINs[i] = grow(lowestBINs[i], capacity, previous);
+        lowestBINs2 = grow(lowestBINs2, capacity, previous);
+        lowestBINs3 = grow(lowestBINs3, capacity, previous);
+        known = (known == null) ? new boolean[capacity] : Arrays.copyOf(known, capacity);
+        stale = (stale == null) ? new boolean[capacity] : Arrays.copyOf(stale, capacity);
+        names = (names == null) ? new String[capacity] : Arrays.copyOf(names, capacity);
+    }
+
+    /**
+     * Grows a price column, the new slots being unknown.
+     */
+    private static long[] grow(long[] column, int capacity, int size) {
+        long[] grown = (column == null) ? new long[capacity] : Arrays.copyOf(column, capacity);
+        Arrays.fill(grown, size, capacity, UNKNOWN);
+
+        return grown;
+    }
+
+    /**
+     * Stores the prices fetched for some lines of the watch list, as returned by
+     * {@link FutBINWatcher#getPrices}, and returns the slots that moved.
+     */
+    public PriceDelta apply(List<ParsedLine> lines, List<Player> players) {
+        int[] appeared = new int[lines.size()];
+        int[] changed = new int[lines.size()];
+        int[] disappeared = new int[lines.size()];
+        int appearedCount = 0, changedCount = 0, disappearedCount = 0;
+
+        for (Integer i = 0; i < lines.size(); i++) {
+            int slot = slot(lines.get(i));
+            if (slot < 0) continue;
+
+            switch (update(slot, players.get(i))) {
+                case APPEARED:    appeared[appearedCount++] = slot; break;
+                case CHANGED:     changed[changedCount++] = slot; break;
+                case DISAPPEARED: disappeared[disappearedCount++] = slot; break;
+                default:          break;
+            }
+        }
+
+        return new PriceDelta(Arrays.copyOf(appeared, appearedCount), Arrays.copyOf(changed, changedCount),
+                Arrays.copyOf(disappeared, disappearedCount));
+    }
+
+    /**
+     * Stores the prices of a player and tells how the slot moved. A null player, whose prices were never
+     * known, only marks the slot's prices as stale.
+     */
+    private int update(int slot, Player player) {
+        Boolean wasKnown = known[slot];
+        Boolean wasStale = stale[slot];
+
+        if (player == null) {
+            stale[slot] = true;
+            return (wasKnown && !wasStale) ? DISAPPEARED : UNCHANGED;
+        }
+
+        Boolean moved = false;
+        for (Integer i = 0; i < markets.size(); i++) moved |= set(lowestBINs[i], slot, player.getLowestBIN(markets.get(i)));
+        moved |= set(lowestBINs2, slot, player.getLowestBIN2());
+        moved |= set(lowestBINs3, slot, player.getLowestBIN3());
+        names[slot] = player.getName();
+        stale[slot] = player.isStale();
+        known[slot] = true;
+
+        if (!wasKnown) return APPEARED;
+        if (player.isStale()) return wasStale ? UNCHANGED : DISAPPEARED;
+        return (moved || wasStale) ? CHANGED : UNCHANGED;
+    }
+
+    /**
+     * Sets a price and tells whether it changed.
+     */
+    private static Boolean set(long[] column, int slot, Long price) {
+        long value = value(price);
+        if (column[slot] == value) return false;
+
+        column[slot] = value;
+        return true;
+    }
+
+    /**
+     * Returns the slots of the players with the given action whose prices are known, in watch list order.
+     */
+    public int[] slots(Action action) {
+        int[] result = new int[order.length];
+        int count = 0;
+        for (int slot : order) {
+            if (known[slot] && actions[slot] == action.ordinal()) result[count++] = slot;
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the slots of every player whose prices are known, in watch list order.
+     */
+    public int[] slots() {
+        int[] result = new int[order.length];
+        int count = 0;
+        for (int slot : order) {
+            if (known[slot]) result[count++] = slot;
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the number of slots, empty ones included, which is never more than the most lines
+     * the snapshot held at once.
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<Platform> getMarkets() {
+        return markets;
+    }
+
+    public ParsedLine getLine(int slot) {
+        return lines[slot];
+    }
+
+    /**
+     * Returns the numeric FutBIN id of the slot's player, or {@link #UNKNOWN}.
+     */
+    public long getPlayerNumber(int slot) {
+        return playerNumbers[slot];
+    }
+
+    public boolean isKnown(int slot) {
+        return known[slot];
+    }
+
+    public boolean isStale(int slot) {
+        return stale[slot];
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public Action getAction(int slot) {
+        return Action.values()[actions[slot]];
+    }
+
+    public long getTargetPrice(int slot) {
+        return targetPrices[slot];
+    }
+
+    /**
+     * @param market index of the market in {@link #getMarkets()}
+     */
+    public long getLowestBIN(int slot, int market) {
+        return lowestBINs[market][slot];
+    }
+
+    public long getLowestBIN2(int slot) {
+        return lowestBINs2[slot];
+    }
+
+    public long getLowestBIN3(int slot) {
+        return lowestBINs3[slot];
+    }
+
+    /**
+     * Returns the lowest of the slot's lowest BINs over all markets, or {@link #UNKNOWN}.
+     */
+    public long cheapestLowestBIN(int slot) {
+        long cheapest = UNKNOWN;
+        for (long[] column : lowestBINs) {
+            if (column[slot] != UNKNOWN && (cheapest == UNKNOWN || column[slot] < cheapest)) cheapest = column[slot];
+        }
+
+        return cheapest;
+    }
+
+    public long totalTargetPrice(int[] slots) {
+        return total(targetPrices, slots);
+    }
+
+    public long totalLowestBIN(int[] slots, int market) {
+        return total(lowestBINs[market], slots);
+    }
+
+    public long totalLowestBIN2(int[] slots) {
+        return total(lowestBINs2, slots);
+    }
+
+    public long totalLowestBIN3(int[] slots) {
+        return total(lowestBINs3, slots);
+    }
+
+    /**
+     * Sums a column over the given slots, unknown values being ignored.
+     */
+    private static long total(long[] column, int[] slots) {
+        long total = 0;
+        for (int slot : slots) {
+            if (column[slot] != UNKNOWN) total += column[slot];
+        }
+
+        return total;
+    }
+
+    private static long value(Long price) {
+        return (price == null) ? UNKNOWN : price;
+    }
+}
@@ -0,0 +1,13 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Writes the prices of the players one record at a time, in a machine-readable format.
+ */
+public interface PriceWriter extends Flushable {
+    void write(ParsedLine line, Player player, Long timestamp) throws IOException;
+}
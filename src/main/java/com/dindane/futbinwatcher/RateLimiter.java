@@ -0,0 +1,41 @@
+package com.dindane.futbinwatcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out permits so that no more than a fixed number of requests per
+ * second leave the process, whatever the number of fetching threads.
+ */
+class RateLimiter {
+    private final long intervalNanos;
+    private long nextPermit = System.nanoTime();
+
+    RateLimiter(Double permitsPerSecond) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("The rate must be positive.");
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    void acquire() throws InterruptedException {
+        long wait;
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextPermit < now) nextPermit = now;
+            wait = nextPermit - now;
+            nextPermit += intervalNanos;
+        }
+
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /**
+     * Takes a permit only if one is available right away.
+     */
+    synchronized Boolean tryAcquire() {
+        long now = System.nanoTime();
+        if (nextPermit > now) return false;
+
+        nextPermit = now + intervalNanos;
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package com.dindane.futbinwatcher;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Saves every page successfully downloaded by another transport, so it can later be served by {@link ReplayServer}.
+ *
+ * Pages are read in full before being handed to the extractor, which therefore can't stop reading early.
+ */
+public class RecordingTransport implements Transport {
+    private final Transport transport;
+    private final Path directory;
+
+    public RecordingTransport(Transport transport, Path directory) throws IOException {
+        this.transport = transport;
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Returns the name of the file a page is recorded in, from the page's path.
+     */
+    static String fileName(String path) {
+        return path.replaceAll("^/+", "").replaceAll("[^A-Za-z0-9.-]", "_") + ".html";
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        final Response response = transport.get(url, headers);
+        if (response.getStatus() != HttpURLConnection.HTTP_OK) return response;
+
+        final byte[] body;
+        try {
+            body = IOUtils.toByteArray(response.getBody());
+        } finally {
+            response.close();
+        }
+
+        Path file = directory.resolve(fileName(new URL(url).getPath()));
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        Files.write(temporary, body);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return new Response() {
+            @Override
+            public Integer getStatus() throws IOException {
+                return response.getStatus();
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return response.getHeader(name);
+            }
+
+            @Override
+            public String getCharset() {
+                return response.getCharset();
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives every watched player its own refresh time.
+ *
+ * Players whose price moves a lot, or is close to triggering a buy or a sale, are refreshed at the refresh
+ * delay, never more often. Quiet players far from their target are refreshed up to {@link #SLOWDOWN} times
+ * less often.
+ */
+class RefreshScheduler {
+    static final Long FLOOR = TimeUnit.MINUTES.toMillis(2);
+    static final Integer SLOWDOWN = 4;
+
+    /**
+     * Relative distance to the target under which a player is considered about to trigger.
+     */
+    private static final Double NEAR_TARGET = 0.10;
+    /**
+     * Average relative change between two samples above which a player is considered volatile.
+     */
+    private static final Double VOLATILE = 0.05;
+    private static final Integer SAMPLES = 5;
+
+    private final Long minInterval;
+    private final Long maxInterval;
+    private final Map<ParsedLine, State> states = new LinkedHashMap<>();
+
+    /**
+     * @param refreshDelay the refresh delay chosen by the user, in milliseconds
+     */
+    RefreshScheduler(Long refreshDelay, Collection<ParsedLine> players) {
+        this.minInterval = Math.max(FLOOR, refreshDelay);
+        this.maxInterval = minInterval * SLOWDOWN;
+
+        for (ParsedLine player : players) states.put(player, new State());
+    }
+
+    /**
+     * Starts watching a player added to the watch list, which is due right away.
+     */
+    synchronized void add(ParsedLine line) {
+        if (!states.containsKey(line)) states.put(line, new State());
+    }
+
+    /**
+     * Stops watching a player removed from the watch list.
+     */
+    synchronized void remove(ParsedLine line) {
+        states.remove(line);
+    }
+
+    /**
+     * Returns the players that must be refreshed now, in watch list order.
+     */
+    synchronized List<ParsedLine> due(Long now) {
+        List<ParsedLine> due = new ArrayList<>();
+        for (Map.Entry<ParsedLine, State> entry : states.entrySet()) {
+            if (entry.getValue().nextDue <= now) due.add(entry.getKey());
+        }
+
+        return due;
+    }
+
+    /**
+     * Returns the earliest time at which a player is due, or null if no player is watched.
+     */
+    synchronized Long nextDue() {
+        Long next = null;
+        for (State state : states.values()) {
+            if (next == null || state.nextDue < next) next = state.nextDue;
+        }
+
+        return next;
+    }
+
+    /**
+     * Records a fresh price, the cheapest of the player's lowest BINs, and schedules the player's next refresh accordingly.
+     */
+    synchronized void record(ParsedLine line, Long price, Long now) {
+        State state = states.get(line);
+        if (state == null) return;
+
+        if (price != null && price > 0) {
+            if (state.samples.size() == SAMPLES) state.samples.removeFirst();
+            state.samples.addLast(price);
+        }
+
+        Double urgency = Math.max(closeness(line, price), volatility(state.samples));
+        state.nextDue = now + maxInterval - Math.round(urgency * (maxInterval - minInterval));
+    }
+
+    /**
+     * Schedules a player whose refresh failed for another try after the floor interval.
+     */
+    synchronized void retryLater(ParsedLine line, Long now) {
+        State state = states.get(line);
+        if (state != null) state.nextDue = now + minInterval;
+    }
+
+    /**
+     * Returns 1 when the player's action would trigger right now, decreasing to 0 as the price moves away from it.
+     */
+    private Double closeness(ParsedLine line, Long price) {
+        if (price == null || price <= 0 || line.getTargetPrice() <= 0) return 1.0;
+
+        Double gap;
+        if (line.getAction() == Action.BUY) gap = (price - line.getTargetPrice()) / (double) line.getTargetPrice();
+        else                                gap = (line.getTargetPrice() - 0.95 * price) / (double) line.getTargetPrice();
+
+        return Math.max(0.0, Math.min(1.0, 1 - gap / NEAR_TARGET));
+    }
+
+    private Double volatility(LinkedList<Long> samples) {
+        if (samples.size() < 2) return 1.0;
+
+        Double change = 0.0;
+        Long previous = null;
+        for (Long sample : samples) {
+            if (previous != null) change += Math.abs(sample - previous) / (double) previous;
+            previous = sample;
+        }
+
+        return Math.min(1.0, change / (samples.size() - 1) / VOLATILE);
+    }
+
+    private static class State {
+        private Long nextDue = 0L;
+        private final LinkedList<Long> samples = new LinkedList<>();
+    }
+}
@@ -0,0 +1,159 @@
+package com.dindane.futbinwatcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for FutBIN serving the pages saved with --record-dir, so the watcher can be exercised
+ * without network. Latency, errors and throttling can be simulated.
+ *
+ * Point the watcher at it with --base-url=http://localhost:&lt;port&gt;.
+ */
+public class ReplayServer {
+    @Option(name = "--pages", required = true, usage = "Directory of the recorded pages.")
+    private String pagesDirectory;
+
+    @Option(name = "--port", required = false, usage = "Port to listen on.")
+    private Integer port = 8080;
+
+    @Option(name = "--latency", required = false, usage = "Delay added to every response, in milliseconds.")
+    private Integer latency = 0;
+
+    @Option(name = "--latency-jitter", required = false, usage = "Random delay added on top of the latency, in milliseconds.")
+    private Integer latencyJitter = 0;
+
+    @Option(name = "--error-rate", required = false, usage = "Share of the requests answered with a 500 error, between 0 and 1.")
+    private Double errorRate = 0.0;
+
+    @Option(name = "--max-requests-per-second", required = false, usage = "Requests above this rate are answered with a 429 error.")
+    private Double maxRequestsPerSecond;
+
+    @Option(name = "--help", aliases = {"-h"}, help = true)
+    private Boolean showHelp = false;
+
+    private Path pages;
+    private RateLimiter throttle;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public static void main(String[] args) throws IOException {
+        ReplayServer replayServer = new ReplayServer();
+        CmdLineParser parser = new CmdLineParser(replayServer);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        if (replayServer.showHelp) {
+            parser.printUsage(System.err);
+            return;
+        }
+
+        replayServer.start();
+        System.out.println("Serving " + replayServer.pages + " on http://localhost:" + replayServer.port + "/");
+    }
+
+    public void start() throws IOException {
+        pages = Paths.get(pagesDirectory);
+        if (maxRequestsPerSecond != null) throttle = new RateLimiter(maxRequestsPerSecond);
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException, InterruptedException {
+        Long delay = (long) latency;
+        if (latencyJitter > 0) delay += ThreadLocalRandom.current().nextInt(latencyJitter + 1);
+        if (delay > 0) TimeUnit.MILLISECONDS.sleep(delay);
+
+        if (throttle != null && !throttle.tryAcquire()) {
+            respond(exchange, 429, "Too many requests.");
+            return;
+        }
+
+        if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+            respond(exchange, 500, "Simulated error.");
+            return;
+        }
+
+        Path page = pages.resolve(RecordingTransport.fileName(exchange.getRequestURI().getPath()));
+        if (!Files.isRegularFile(page)) {
+            respond(exchange, 404, "No recorded page for " + exchange.getRequestURI().getPath() + ".");
+            return;
+        }
+
+        String etag = "\"" + Files.size(page) + "-" + Files.getLastModifiedTime(page).toMillis() + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] body = Files.readAllBytes(page);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void respond(HttpExchange exchange, Integer status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
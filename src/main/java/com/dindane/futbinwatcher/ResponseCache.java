@@ -0,0 +1,158 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * On-disk cache of the values extracted from player pages, along with the validators
+ * (ETag and Last-Modified) needed to revalidate them with a conditional request.
+ *
+ * Entries younger than the TTL are reused without contacting the server at all.
+ */
+public class ResponseCache {
+    private final Path directory;
+    private final Long ttlMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ResponseCache(Path directory, Long ttlMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.ttlMillis = ttlMillis;
+    }
+
+    Entry get(String url) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            entry = load(url);
+            if (entry != null) entries.putIfAbsent(url, entry);
+        }
+
+        return entry;
+    }
+
+    Boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt < ttlMillis;
+    }
+
+    void put(String url, Entry entry) {
+        entries.put(url, entry);
+
+        Properties properties = new Properties();
+        properties.setProperty("url", url);
+        properties.setProperty("storedAt", String.valueOf(entry.storedAt));
+        if (entry.etag != null) properties.setProperty("etag", entry.etag);
+        if (entry.lastModified != null) properties.setProperty("lastModified", entry.lastModified);
+        properties.setProperty("name", entry.name);
+        for (Map.Entry<Platform, Long> lowestBIN : entry.lowestBINs.entrySet()) {
+            properties.setProperty("lowestBIN." + lowestBIN.getKey(), String.valueOf(lowestBIN.getValue()));
+        }
+        properties.setProperty("lowestBIN2", String.valueOf(entry.lowestBIN2));
+        properties.setProperty("lowestBIN3", String.valueOf(entry.lowestBIN3));
+
+        Path file = file(url);
+        try {
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, null);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The in-memory entry is still valid, the next write will try again.
+        }
+    }
+
+    private Entry load(String url) {
+        Path file = file(url);
+        if (!Files.isRegularFile(file)) return null;
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (!url.equals(properties.getProperty("url"))) return null;
+
+        try {
+            Map<Platform, Long> lowestBINs = new EnumMap<>(Platform.class);
+            for (Platform platform : Platform.values()) {
+                String lowestBIN = properties.getProperty("lowestBIN." + platform);
+                if (lowestBIN != null) lowestBINs.put(platform, Long.parseLong(lowestBIN));
+            }
+            if (lowestBINs.isEmpty()) return null;
+
+            return new Entry(properties.getProperty("etag"), properties.getProperty("lastModified"),
+                    Long.parseLong(properties.getProperty("storedAt")), properties.getProperty("name"), lowestBINs,
+                    Long.parseLong(properties.getProperty("lowestBIN2")),
+                    Long.parseLong(properties.getProperty("lowestBIN3")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Path file(String url) {
+        return directory.resolve(url.replaceFirst("^[a-z]+://", "").replaceAll("[^A-Za-z0-9.-]", "_") + ".properties");
+    }
+
+    static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final Long storedAt;
+        private final String name;
+        private final Map<Platform, Long> lowestBINs;
+        private final Long lowestBIN2;
+        private final Long lowestBIN3;
+
+        Entry(String etag, String lastModified, Long storedAt, String name,
+              Map<Platform, Long> lowestBINs, Long lowestBIN2, Long lowestBIN3) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+            this.name = name;
+            this.lowestBINs = lowestBINs;
+            this.lowestBIN2 = lowestBIN2;
+            this.lowestBIN3 = lowestBIN3;
+        }
+
+        static Entry of(String etag, String lastModified, Player player) {
+            return new Entry(etag, lastModified, System.currentTimeMillis(), player.getName(),
+                    player.getLowestBINs(), player.getLowestBIN2(), player.getLowestBIN3());
+        }
+
+        Entry revalidated() {
+            return new Entry(etag, lastModified, System.currentTimeMillis(), name, lowestBINs, lowestBIN2, lowestBIN3);
+        }
+
+        /**
+         * Tells whether the entry holds the prices of all the given markets, which isn't the case
+         * when it was stored while watching other markets.
+         */
+        Boolean hasPrices(Collection<Platform> markets) {
+            return lowestBINs.keySet().containsAll(markets);
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        Player toPlayer(String url, ParsedLine line) {
+            return new Player(name, url, line.getTargetPrice(), lowestBINs, lowestBIN2, lowestBIN3, line.getAction());
+        }
+    }
+}
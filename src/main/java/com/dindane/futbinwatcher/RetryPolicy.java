@@ -0,0 +1,61 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.HttpStatusException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request is tried again, and how long to wait before doing so.
+ * Waits grow exponentially and are fully jittered so that retries from several threads don't line up.
+ */
+public class RetryPolicy {
+    public static final Integer DEFAULT_MAX_ATTEMPTS = 3;
+    public static final Long DEFAULT_BASE_DELAY = 1000L;
+    public static final Long DEFAULT_MAX_DELAY = 30000L;
+
+    private final Integer maxAttempts;
+    private final Long baseDelay;
+    private final Long maxDelay;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param maxAttempts number of attempts, the first one included
+     * @param baseDelay   upper bound of the first wait, in milliseconds
+     * @param maxDelay    upper bound of any wait, in milliseconds
+     */
+    public RetryPolicy(Integer maxAttempts, Long baseDelay, Long maxDelay) {
+        if (maxAttempts < 1) throw new IllegalArgumentException("At least one attempt is needed.");
+
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns how long to wait after the given failed attempt, the first one being 1.
+     */
+    Long backoff(Integer attempt) {
+        Long ceiling = maxDelay;
+        if (attempt < 31) ceiling = Math.min(maxDelay, baseDelay << (attempt - 1));
+
+        return (ceiling <= 0) ? 0L : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Network errors, server errors and throttling are worth retrying, other HTTP errors aren't.
+     */
+    Boolean isRetryable(IOException e) {
+        if (!(e instanceof HttpStatusException)) return true;
+
+        Integer status = ((HttpStatusException) e).getStatus();
+        return status >= 500 || status == 429;
+    }
+}
@@ -0,0 +1,89 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+import com.dindane.futbinwatcher.exceptions.UnsupportedPlatformException;
+import org.jsoup.nodes.Document;
+import us.codecraft.xsoup.Xsoup;
+import us.codecraft.xsoup.xevaluator.XPathEvaluator;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the compiled XPath selectors of every supported platform.
+ * Expressions are compiled once when the class is loaded and are shared by all the fetching threads.
+ */
+class SelectorRegistry {
+    private static final Map<Platform, PageSelectors> selectors = new EnumMap<>(Platform.class);
+
+    static {
+        selectors.put(Platform.PC, new FutPCSelectors());
+        selectors.put(Platform.XBOX, new FutBINSelectors(Platform.XBOX));
+        selectors.put(Platform.PS, new FutBINSelectors(Platform.PS));
+        selectors.put(Platform.ALL, new FutBINSelectors(Platform.ALL));
+    }
+
+    private SelectorRegistry() {
+    }
+
+    static PageSelectors forPlatform(Platform platform) throws UnsupportedPlatformException {
+        PageSelectors pageSelectors = selectors.get(platform);
+        if (pageSelectors == null) throw new UnsupportedPlatformException(String.valueOf(platform));
+
+        return pageSelectors;
+    }
+
+    /**
+     * Returns the id of the span holding a console's lowest BIN on FutBIN's pages.
+     */
+    static String lowestBinSpanId(Platform platform) {
+        return (platform == Platform.XBOX) ? "xboxlbin" : "pslbin";
+    }
+
+    static Long parseLong(String s) {
+        return Long.parseLong(s.replace(" ", "").replace(",", ""));
+    }
+
+    interface PageSelectors {
+        Player extract(Document doc, String url, ParsedLine line);
+    }
+
+    private static class FutPCSelectors implements PageSelectors {
+        private final XPathEvaluator cells = Xsoup.compile("//td/text()");
+        private final XPathEvaluator lowestBin = Xsoup.compile("//div[contains(@class, \"lowestBin\")]//span/text()");
+
+        @Override
+        public Player extract(Document doc, String url, ParsedLine line) {
+            List<String> texts = cells.evaluate(doc).list();
+
+            return new Player(texts.get(4), url, line.getTargetPrice(),
+                    Collections.singletonMap(Platform.PC, parseLong(lowestBin.evaluate(doc).list().get(0))),
+                    parseLong(texts.get(0)), parseLong(texts.get(2)), line.getAction());
+        }
+    }
+
+    private static class FutBINSelectors implements PageSelectors {
+        private final XPathEvaluator infoRows = Xsoup.compile("//table[contains(@id, \"info\")]//tbody//tr");
+        private final Map<Platform, XPathEvaluator> lowestBins = new EnumMap<>(Platform.class);
+
+        FutBINSelectors(Platform platform) {
+            for (Platform market : platform.markets()) {
+                lowestBins.put(market, Xsoup.compile("//span[contains(@id, \"" + lowestBinSpanId(market) + "\")]/text()"));
+            }
+        }
+
+        @Override
+        public Player extract(Document doc, String url, ParsedLine line) {
+            String playerName = infoRows.evaluate(doc).getElements().get(0).child(0).childNode(0).toString();
+
+            Map<Platform, Long> prices = new EnumMap<>(Platform.class);
+            for (Map.Entry<Platform, XPathEvaluator> lowestBin : lowestBins.entrySet()) {
+                prices.put(lowestBin.getKey(), parseLong(lowestBin.getValue().evaluate(doc).list().get(0)));
+            }
+
+            return new Player(playerName, url, line.getTargetPrice(), prices, -1L, -1L, line.getAction());
+        }
+    }
+}
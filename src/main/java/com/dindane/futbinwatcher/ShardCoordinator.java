@@ -0,0 +1,278 @@
+package com.dindane.futbinwatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a watch list between several watcher instances sharing a directory, on one machine or
+ * on several ones through a shared file system.
+ *
+ * Every instance keeps a heartbeat file in the directory. The live instances are placed on a
+ * consistent hash ring, and each player belongs to the first instance after it on the ring, so an
+ * instance joining or leaving only moves the players of its neighbours.
+ *
+ * An instance is considered gone when its heartbeat stops changing for {@link #MEMBER_TIMEOUT}
+ * milliseconds, measured with the local clock so the clocks of the machines don't need to agree.
+ * The files of an instance that stopped without leaving are removed once its lock is free, which
+ * also keeps a new instance from waiting for the heartbeat of a crashed one to time out.
+ */
+class ShardCoordinator implements Closeable {
+    static final Long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    static final Long MEMBER_TIMEOUT = TimeUnit.SECONDS.toMillis(20);
+
+    private static final Integer VIRTUAL_NODES = 128;
+    private static final String MEMBER_SUFFIX = ".member";
+
+    private final Path directory;
+    private final String instanceId;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ScheduledExecutorService heartbeat;
+    private Long sequence = 0L;
+    private Boolean closed = false;
+
+    /**
+     * Last heartbeat read of every instance and the local time at which it changed.
+     */
+    private final Map<String, String> heartbeats = new HashMap<>();
+    private final Map<String, Long> heartbeatChanges = new HashMap<>();
+    private List<String> members = Collections.emptyList();
+    private TreeMap<Long, String> ring = new TreeMap<>();
+
+    ShardCoordinator(Path directory, String instanceId) throws IOException {
+        if (!instanceId.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("An instance id can only contain letters, digits, '.', '_' and '-'.");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.instanceId = instanceId;
+
+        // Keeps two instances from using the same id.
+        this.lockChannel = FileChannel.open(directory.resolve(instanceId + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        this.lock = acquired;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException(String.format("Another instance named \"%s\" is already running.", instanceId));
+        }
+
+        beat();
+        refresh();
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "futbin-shard-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    beat();
+                } catch (IOException e) {
+                    // The next beat will try again, the other instances only drop this one after several misses.
+                }
+            }
+        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns an id unique to this process on this machine.
+     */
+    static String defaultInstanceId() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        Integer at = name.indexOf('@');
+        String id = (at < 0) ? name : name.substring(at + 1) + "-" + name.substring(0, at);
+
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Reads the heartbeats of the instances and rebuilds the ring if some joined or left.
+     * Returns true when the players have to be rebalanced.
+     */
+    synchronized Boolean refresh() throws IOException {
+        Long now = System.currentTimeMillis();
+        List<String> alive = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + MEMBER_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - MEMBER_SUFFIX.length());
+
+                String content;
+                try {
+                    content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+
+                if (id.equals(instanceId)) {
+                    alive.add(id);
+                    continue;
+                }
+
+                Boolean seen = heartbeats.containsKey(id);
+                if (!content.equals(heartbeats.get(id))) {
+                    heartbeats.put(id, content);
+                    heartbeatChanges.put(id, now);
+                }
+                if ((!seen || now - heartbeatChanges.get(id) >= MEMBER_TIMEOUT) && removeIfStopped(id)) continue;
+                if (now - heartbeatChanges.get(id) < MEMBER_TIMEOUT) alive.add(id);
+            }
+        }
+        if (!alive.contains(instanceId)) alive.add(instanceId);
+        Collections.sort(alive);
+
+        if (alive.equals(members)) return false;
+
+        TreeMap<Long, String> newRing = new TreeMap<>();
+        for (String member : alive) {
+            for (Integer i = 0; i < VIRTUAL_NODES; i++) newRing.put(hash(member + "#" + i), member);
+        }
+        members = Collections.unmodifiableList(alive);
+        ring = newRing;
+
+        return true;
+    }
+
+    /**
+     * Tells whether a player is watched by this instance.
+     */
+    synchronized Boolean owns(String playerId) {
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(playerKey(playerId)));
+        if (owner == null) owner = ring.firstEntry();
+
+        return owner.getValue().equals(instanceId);
+    }
+
+    synchronized List<String> getMembers() {
+        return members;
+    }
+
+    String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Leaves the group, the other instances taking this one's players at their next refresh.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        // Being synchronized, this waits for a beat in progress, and the next ones do nothing.
+        if (closed) return;
+        closed = true;
+
+        heartbeat.shutdown();
+        Files.deleteIfExists(memberFile());
+        lock.release();
+        lockChannel.close();
+        Files.deleteIfExists(directory.resolve(instanceId + ".lock"));
+    }
+
+    private synchronized void beat() throws IOException {
+        if (closed) return;
+
+        sequence++;
+        Path file = memberFile();
+        Path temporary = Files.createTempFile(directory, instanceId, ".tmp");
+        Files.write(temporary, String.valueOf(sequence).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the files of an instance if its lock is free, i.e. if its process is gone.
+     * Returns true when they were removed.
+     */
+    private Boolean removeIfStopped(String id) {
+        Path lockFile = directory.resolve(id + ".lock");
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock free;
+            try {
+                free = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another coordinator of this process.
+                return false;
+            }
+            if (free == null) return false;
+
+            try {
+                Files.deleteIfExists(directory.resolve(id + MEMBER_SUFFIX));
+                Files.deleteIfExists(lockFile);
+            } finally {
+                free.release();
+            }
+        } catch (NoSuchFileException e) {
+            // Left without its lock file, e.g. removed by hand: only its heartbeat tells whether it runs.
+            return false;
+        } catch (IOException e) {
+            // The file system may not support locks, the heartbeat timeout still applies.
+            return false;
+        }
+
+        heartbeats.remove(id);
+        heartbeatChanges.remove(id);
+        return true;
+    }
+
+    private Path memberFile() {
+        return directory.resolve(instanceId + MEMBER_SUFFIX);
+    }
+
+    /**
+     * Hashes a player by its numeric id when it has one, so a link and an id of the same player agree.
+     */
+    private static String playerKey(String playerId) {
+        Long number = PriceHistory.playerNumber(playerId);
+        return (number == null) ? playerId : String.valueOf(number);
+    }
+
+    /**
+     * 64-bit FNV-1a, followed by a final mix spreading close keys over the ring.
+     */
+    static Long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -0,0 +1,527 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the latest prices as JSON over HTTP, from memory, so dashboards and bots can poll them as
+ * often as they like without a single additional request to FutBIN.
+ *
+ * <ul>
+ *     <li>GET /players: every player whose prices are known, in watch list order.</li>
+ *     <li>GET /players/&lt;id&gt;: the lines of the watch list of a player.</li>
+ *     <li>GET /changes?since=&lt;cycle&gt;: the players whose prices moved after the given refresh cycle.</li>
+ *     <li>GET /metrics: the {@link Metrics}, in the Prometheus text format, if a registry was given.</li>
+ * </ul>
+ *
+ * Every connection is served by a single thread through a selector. After each refresh the prices are
+ * published as an immutable view, in which the JSON of the players that didn't move is reused.
+ */
+public class SnapshotServer implements Closeable {
+    public static final Integer DEFAULT_PORT = 8080;
+
+    /**
+     * Size of the largest request accepted, headers included.
+     */
+    private static final Integer MAX_REQUEST_SIZE = 8192;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private volatile Boolean closed = false;
+    private volatile Metrics metrics;
+
+    private volatile View view = new View(0, 0, 0, new String[0], new long[0], Collections.<String, List<Integer>>emptyMap());
+
+    // Only used by the publishing thread.
+    private long cycle = 0;
+    private long listChangedAt = 0;
+    private String[] rowJson = new String[0];
+    private long[] changedAt = new long[0];
+    /**
+     * Line each cached row was built for, a slot being reused once its line is removed.
+     */
+    private ParsedLine[] rowLines = new ParsedLine[0];
+
+    public SnapshotServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "futbin-snapshot-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Serves a metrics registry on /metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Integer getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Publishes the prices of a snapshot after a refresh cycle. Must always be called from the same thread.
+     *
+     * @param delta       the slots that moved during the cycle
+     * @param listChanged whether players were added to or removed from the snapshot since the last cycle
+     */
+    public void publish(PriceSnapshot snapshot, PriceDelta delta, Boolean listChanged) {
+        cycle++;
+        if (listChanged) listChangedAt = cycle;
+
+        if (rowJson.length < snapshot.size()) {
+            rowJson = Arrays.copyOf(rowJson, snapshot.size());
+            changedAt = Arrays.copyOf(changedAt, snapshot.size());
+            rowLines = Arrays.copyOf(rowLines, snapshot.size());
+        }
+        for (int slot : delta.slots()) {
+            rowJson[slot] = null;
+            changedAt[slot] = cycle;
+        }
+
+        int[] slots = snapshot.slots();
+        String[] rows = new String[slots.length];
+        long[] rowsChangedAt = new long[slots.length];
+        Map<String, List<Integer>> byPlayer = new HashMap<>();
+        for (Integer i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (rowJson[slot] == null || rowLines[slot] != snapshot.getLine(slot)) {
+                rowJson[slot] = toJson(snapshot, slot, changedAt[slot]);
+                rowLines[slot] = snapshot.getLine(slot);
+            }
+
+            rows[i] = rowJson[slot];
+            rowsChangedAt[i] = changedAt[slot];
+
+            // A player can be asked for by the id of its link, e.g. "4610/modric", or by its number.
+            String playerId = snapshot.getLine(slot).getPlayerId();
+            Long number = PriceHistory.playerNumber(playerId);
+            index(byPlayer, playerId, i);
+            if (number != null && !playerId.equals(number.toString())) index(byPlayer, number.toString(), i);
+        }
+
+        view = new View(cycle, listChangedAt, System.currentTimeMillis(), rows, rowsChangedAt, byPlayer);
+    }
+
+    private static void index(Map<String, List<Integer>> byPlayer, String playerId, Integer row) {
+        List<Integer> playerRows = byPlayer.get(playerId);
+        if (playerRows == null) {
+            playerRows = new ArrayList<>(1);
+            byPlayer.put(playerId, playerRows);
+        }
+        playerRows.add(row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String toJson(PriceSnapshot snapshot, int slot, long changedAt) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"id\":").append(Json.quote(snapshot.getLine(slot).getPlayerId()))
+                .append(",\"name\":").append(Json.quote(snapshot.getName(slot)))
+                .append(",\"action\":").append(Json.quote(snapshot.getAction(slot).toString()))
+                .append(",\"targetPrice\":").append(snapshot.getTargetPrice(slot))
+                .append(",\"lowestBIN\":{");
+        List<Platform> markets = snapshot.getMarkets();
+        for (Integer market = 0; market < markets.size(); market++) {
+            if (market > 0) json.append(',');
+            json.append(Json.quote(markets.get(market).toString())).append(':');
+            appendPrice(json, snapshot.getLowestBIN(slot, market));
+        }
+        json.append("},\"lowestBIN2\":");
+        appendPrice(json, snapshot.getLowestBIN2(slot));
+        json.append(",\"lowestBIN3\":");
+        appendPrice(json, snapshot.getLowestBIN3(slot));
+        json.append(",\"stale\":").append(snapshot.isStale(slot))
+                .append(",\"cycle\":").append(changedAt).append('}');
+
+        return json.toString();
+    }
+
+    /**
+     * Appends a price, or null for {@link PriceSnapshot#UNKNOWN} and for the -1 of a BIN FutBIN doesn't show.
+     */
+    private static void appendPrice(StringBuilder json, long price) {
+        if (price < 0) json.append("null");
+        else                                json.append(price);
+    }
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else if (key.isReadable()) ((Connection) key.attachment()).read(key);
+                        else if (key.isWritable()) ((Connection) key.attachment()).write(key);
+                    } catch (IOException e) {
+                        // The client went away, only its connection is dropped.
+                        if (key.channel() == serverChannel) continue;
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("The snapshot server stopped: " + e.getMessage());
+        } finally {
+            try {
+                for (SelectionKey key : selector.keys()) key.channel().close();
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway.
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    /**
+     * Answers a request line, e.g. "GET /players HTTP/1.1", from the current view.
+     */
+    private Response respond(String method, String target) {
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return Response.error(405, "Method Not Allowed", "Only GET and HEAD are supported.");
+        }
+
+        String path = target;
+        String query = "";
+        Integer question = target.indexOf('?');
+        if (question >= 0) {
+            path = target.substring(0, question);
+            query = target.substring(question + 1);
+        }
+
+        View current = view;
+        if (path.equals("/players") || path.equals("/players/")) {
+            return Response.ok(current.all());
+        } else if (path.startsWith("/players/")) {
+            String playerId = decode(path.substring("/players/".length()));
+            String body = current.player(playerId);
+            if (body == null) return Response.error(404, "Not Found", String.format("Player \"%s\" is not watched or has no known price.", playerId));
+            return Response.ok(body);
+        } else if (path.equals("/changes")) {
+            String since = parameter(query, "since");
+            if (since == null || !since.matches("[0-9]{1,18}")) {
+                return Response.error(400, "Bad Request", "The \"since\" parameter must be a cycle number.");
+            }
+            return Response.ok(current.changes(Long.parseLong(since)));
+        } else if (path.equals("/metrics") && metrics != null) {
+            return new Response(200, "OK", "text/plain; version=0.0.4; charset=UTF-8", metrics.toPrometheus());
+        }
+
+        return Response.error(404, "Not Found", "Unknown path, use /players, /players/<id> or /changes?since=<cycle>.");
+    }
+
+    private static String parameter(String query, String name) {
+        for (String parameter : query.split("&")) {
+            Integer equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(name)) return decode(parameter.substring(equals + 1));
+        }
+
+        return null;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return s;
+        }
+    }
+
+    /**
+     * A client connection, reading requests one at a time and writing their response.
+     */
+    private class Connection {
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        private ByteBuffer out;
+        private Boolean closeAfterResponse = false;
+        /**
+         * Bytes of the body of the last request that were not read yet.
+         */
+        private long bodyRemaining = 0;
+
+        void read(SelectionKey key) throws IOException {
+            if (((SocketChannel) key.channel()).read(in) < 0) {
+                key.cancel();
+                key.channel().close();
+                return;
+            }
+
+            handle(key);
+        }
+
+        void write(SelectionKey key) throws IOException {
+            ((SocketChannel) key.channel()).write(out);
+            if (out.hasRemaining()) return;
+
+            out = null;
+            if (closeAfterResponse) {
+                key.cancel();
+                key.channel().close();
+                return;
+            }
+
+            key.interestOps(SelectionKey.OP_READ);
+            // Pipelined requests may already be waiting in the buffer.
+            handle(key);
+        }
+
+        /**
+         * Answers the request at the start of the buffer if it was fully read.
+         */
+        private void handle(SelectionKey key) {
+            if (bodyRemaining > 0) {
+                Integer skipped = (int) Math.min(bodyRemaining, in.position());
+                in.flip();
+                in.position(skipped);
+                in.compact();
+                bodyRemaining -= skipped;
+                if (bodyRemaining > 0) return;
+            }
+
+            Integer end = headersEnd();
+            if (end < 0) {
+                if (!in.hasRemaining()) {
+                    send(key, Response.error(431, "Request Header Fields Too Large", "The request is too large."), true, false);
+                }
+                return;
+            }
+
+            String request = new String(in.array(), 0, end, StandardCharsets.ISO_8859_1);
+            in.flip();
+            in.position(end + 4);
+            in.compact();
+
+            String[] lines = request.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                send(key, Response.error(400, "Bad Request", "Malformed request line."), true, false);
+                return;
+            }
+
+            String connection = null;
+            String contentLength = null;
+            Boolean chunked = false;
+            for (Integer i = 1; i < lines.length; i++) {
+                Integer colon = lines[i].indexOf(':');
+                if (colon <= 0) continue;
+
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Connection")) {
+                    connection = value.toLowerCase();
+                } else if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = value;
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    chunked = true;
+                }
+            }
+            Boolean close = requestLine[2].equals("HTTP/1.0") ? !"keep-alive".equals(connection) : "close".equals(connection);
+
+            // The body is skipped so that the next request starts where it ends. A body of unknown length,
+            // or sent with a method that is refused anyway, ends the connection instead.
+            String method = requestLine[0];
+            if (chunked || (!method.equals("GET") && !method.equals("HEAD"))) {
+                close = true;
+            } else if (contentLength != null) {
+                try {
+                    bodyRemaining = Long.parseLong(contentLength);
+                } catch (NumberFormatException e) {
+                    bodyRemaining = -1;
+                }
+                if (bodyRemaining < 0) {
+                    bodyRemaining = 0;
+                    send(key, Response.error(400, "Bad Request", "Malformed Content-Length."), true, false);
+                    return;
+                }
+            }
+
+            send(key, respond(method, requestLine[1]), close, method.equals("HEAD"));
+        }
+
+        private Integer headersEnd() {
+            byte[] bytes = in.array();
+            for (int i = 0; i + 3 < in.position(); i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') return i;
+            }
+
+            return -1;
+        }
+
+        private void send(SelectionKey key, Response response, Boolean close, Boolean headOnly) {
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            String headers = "HTTP/1.1 " + response.status + " " + response.reason + "\r\n" +
+                    "Content-Type: " + response.contentType + "\r\n" +
+                    "Content-Length: " + body.length + "\r\n" +
+                    "Cache-Control: no-cache\r\n" +
+                    "Connection: " + (close ? "close" : "keep-alive") + "\r\n\r\n";
+            byte[] head = headers.getBytes(StandardCharsets.ISO_8859_1);
+
+            out = ByteBuffer.allocate(head.length + (headOnly ? 0 : body.length));
+            out.put(head);
+            if (!headOnly) out.put(body);
+            out.flip();
+
+            closeAfterResponse = close;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private static class Response {
+        private static final String JSON = "application/json; charset=UTF-8";
+
+        private final Integer status;
+        private final String reason;
+        private final String contentType;
+        private final String body;
+
+        private Response(Integer status, String reason, String contentType, String body) {
+            this.status = status;
+            this.reason = reason;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, "OK", JSON, body);
+        }
+
+        static Response error(Integer status, String reason, String message) {
+            return new Response(status, reason, JSON, "{\"error\":" + Json.quote(message) + "}");
+        }
+    }
+
+    /**
+     * Prices as published after a refresh cycle, never modified afterwards.
+     */
+    private static class View {
+        private final long cycle;
+        private final long listChangedAt;
+        private final long timestamp;
+        private final String[] rows;
+        private final long[] changedAt;
+        private final Map<String, List<Integer>> byPlayer;
+        /**
+         * Body of /players, built by the first request asking for it.
+         */
+        private volatile String all;
+
+        View(long cycle, long listChangedAt, long timestamp, String[] rows, long[] changedAt,
+             Map<String, List<Integer>> byPlayer) {
+            this.cycle = cycle;
+            this.listChangedAt = listChangedAt;
+            this.timestamp = timestamp;
+            this.rows = rows;
+            this.changedAt = changedAt;
+            this.byPlayer = byPlayer;
+        }
+
+        String all() {
+            if (all == null) {
+                StringBuilder body = header(rows.length);
+                for (Integer i = 0; i < rows.length; i++) {
+                    if (i > 0) body.append(',');
+                    body.append(rows[i]);
+                }
+                all = body.append("]}").toString();
+            }
+
+            return all;
+        }
+
+        String player(String playerId) {
+            List<Integer> playerRows = byPlayer.get(playerId);
+            if (playerRows == null) return null;
+
+            StringBuilder body = header(playerRows.size());
+            for (Integer i = 0; i < playerRows.size(); i++) {
+                if (i > 0) body.append(',');
+                body.append(rows[playerRows.get(i)]);
+            }
+
+            return body.append("]}").toString();
+        }
+
+        /**
+         * Lists the players that moved after a cycle, and tells whether players were added or removed since.
+         */
+        String changes(long since) {
+            StringBuilder body = new StringBuilder(64);
+            body.append("{\"cycle\":").append(cycle)
+                    .append(",\"timestamp\":").append(timestamp)
+                    .append(",\"since\":").append(since)
+                    .append(",\"listChanged\":").append(listChangedAt > since)
+                    .append(",\"players\":[");
+            Boolean first = true;
+            for (Integer i = 0; i < rows.length; i++) {
+                if (changedAt[i] <= since) continue;
+
+                if (!first) body.append(',');
+                body.append(rows[i]);
+                first = false;
+            }
+
+            return body.append("]}").toString();
+        }
+
+        private StringBuilder header(Integer size) {
+            return new StringBuilder(64 + size * 256)
+                    .append("{\"cycle\":").append(cycle)
+                    .append(",\"timestamp\":").append(timestamp)
+                    .append(",\"players\":[");
+        }
+    }
+}
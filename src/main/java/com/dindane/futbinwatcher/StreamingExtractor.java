@@ -0,0 +1,321 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Extracts a FutBIN player's name and lowest BINs while tokenizing the page, without building a DOM.
+ * Reading stops as soon as both values are found.
+ *
+ * The extractor returns null whenever the page does not look like what it expects, in which case
+ * the caller is supposed to fall back to the Jsoup/Xsoup selectors.
+ */
+class StreamingExtractor {
+    private static final Integer BUFFER_SIZE = 8192;
+
+    /**
+     * Pages are read by a fixed pool of threads, each of them keeps its own read buffer.
+     */
+    private static final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[BUFFER_SIZE];
+        }
+    };
+
+    private final Map<Platform, String> lowestBinSpanIds = new EnumMap<>(Platform.class);
+
+    StreamingExtractor(Platform platform) {
+        for (Platform market : platform.markets()) lowestBinSpanIds.put(market, SelectorRegistry.lowestBinSpanId(market));
+    }
+
+    /**
+     * Returns the extractor of a platform, or null if the platform's pages can only be read through the DOM.
+     */
+    static StreamingExtractor forPlatform(Platform platform) {
+        return (platform == Platform.PC) ? null : new StreamingExtractor(platform);
+    }
+
+    Player extract(Reader in, String url, ParsedLine line) throws IOException {
+        Scan scan = new Scan(in);
+        scan.run();
+
+        if (!scan.done()) return null;
+
+        Map<Platform, Long> prices = new EnumMap<>(Platform.class);
+        for (Map.Entry<Platform, StringBuilder> lowestBin : scan.lowestBins.entrySet()) {
+            String text = lowestBin.getValue().toString();
+            for (char c : new char[]{'\t', '\n', '\f', '\r'}) text = text.replace(c, ' ');
+            if (text.trim().isEmpty()) return null;
+
+            try {
+                prices.put(lowestBin.getKey(), SelectorRegistry.parseLong(text));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return new Player(renderTextNode(scan.playerName, url), url, line.getTargetPrice(),
+                prices, -1L, -1L, line.getAction());
+    }
+
+    /**
+     * Renders a cell's first text node exactly like the DOM path does with {@code childNode(0).toString()}.
+     */
+    private String renderTextNode(String rawText, String url) {
+        Element cell = new Element(Tag.valueOf("td"), url);
+        cell.appendChild(new TextNode(Parser.unescapeEntities(rawText, false), url));
+
+        return cell.childNode(0).toString();
+    }
+
+    /**
+     * State of a single pass over a page.
+     */
+    private class Scan {
+        private final Reader in;
+        private final char[] buffer = buffers.get();
+        private Integer length = 0;
+        private Integer position = 0;
+
+        private String playerName;
+        private final Map<Platform, StringBuilder> lowestBins = new EnumMap<>(Platform.class);
+
+        private StringBuilder lowestBin;
+        private Integer lowestBinDepth = 0;
+
+        private Integer infoTableDepth = 0;
+        private Integer tableDepth = 0;
+        private Boolean inTableHead = false;
+        private Boolean awaitingCell = false;
+        private Boolean capturingName = false;
+
+        Scan(Reader in) {
+            this.in = in;
+        }
+
+        void run() throws IOException {
+            StringBuilder text = new StringBuilder();
+            int c;
+
+            while (!done() && (c = read()) != -1) {
+                if (c == '<') {
+                    int next = peek();
+                    if (next == '/' || next == '!' || next == '?' || Character.isLetter(next)) {
+                        if (!onText(text)) return;
+                        text.setLength(0);
+                        readMarkup();
+                        continue;
+                    }
+                }
+                text.append((char) c);
+            }
+
+            onText(text);
+        }
+
+        private Boolean done() {
+            return playerName != null && lowestBins.size() == lowestBinSpanIds.size() && lowestBin == null;
+        }
+
+        /**
+         * Returns false when the page can't be handled and the scan must be abandoned.
+         */
+        private Boolean onText(StringBuilder text) {
+            if (capturingName) {
+                capturingName = false;
+                if (text.length() == 0) return false;
+                playerName = text.toString();
+            }
+
+            if (lowestBin != null && lowestBinDepth == 0) {
+                lowestBin.append(Parser.unescapeEntities(text.toString(), false));
+            }
+
+            return true;
+        }
+
+        private void readMarkup() throws IOException {
+            int c = read();
+
+            if (c == '!' || c == '?') {
+                if (c == '!' && peek() == '-') {
+                    skipPast("-->");
+                } else {
+                    skipPast(">");
+                }
+                if (capturingName) capturingName = false;
+                return;
+            }
+
+            Boolean closing = (c == '/');
+            StringBuilder name = new StringBuilder();
+            if (!closing) name.append((char) c);
+            while ((c = read()) != -1 && !Character.isWhitespace(c) && c != '>' && c != '/') name.append((char) c);
+
+            String tagName = name.toString().toLowerCase(Locale.ENGLISH);
+            String id = (c == '>') ? null : readAttributesForId();
+
+            if (closing) {
+                onEndTag(tagName);
+            } else {
+                onStartTag(tagName, id);
+                if (tagName.equals("script") || tagName.equals("style")) skipPast("</" + tagName);
+            }
+        }
+
+        private void onStartTag(String tagName, String id) {
+            if (capturingName) capturingName = false;
+
+            if (lowestBin != null) {
+                if (!isVoid(tagName)) lowestBinDepth++;
+            } else if (tagName.equals("span") && id != null) {
+                for (Map.Entry<Platform, String> spanId : lowestBinSpanIds.entrySet()) {
+                    if (!lowestBins.containsKey(spanId.getKey()) && id.contains(spanId.getValue())) {
+                        lowestBin = new StringBuilder();
+                        lowestBins.put(spanId.getKey(), lowestBin);
+                        break;
+                    }
+                }
+            }
+
+            if (tagName.equals("table")) {
+                tableDepth++;
+                if (infoTableDepth == 0 && playerName == null && id != null && id.contains("info")) {
+                    infoTableDepth = tableDepth;
+                }
+            } else if (infoTableDepth > 0 && playerName == null) {
+                if (tagName.equals("thead") || tagName.equals("tfoot")) {
+                    inTableHead = true;
+                } else if (tagName.equals("tbody")) {
+                    inTableHead = false;
+                } else if (tagName.equals("tr") && !inTableHead) {
+                    awaitingCell = true;
+                } else if (awaitingCell && (tagName.equals("td") || tagName.equals("th"))) {
+                    awaitingCell = false;
+                    capturingName = true;
+                }
+            }
+        }
+
+        private void onEndTag(String tagName) {
+            if (capturingName) capturingName = false;
+
+            if (lowestBin != null) {
+                if (lowestBinDepth > 0) {
+                    if (!isVoid(tagName)) lowestBinDepth--;
+                } else if (tagName.equals("span")) {
+                    lowestBin = null;
+                }
+            }
+
+            if (tagName.equals("table")) {
+                if (tableDepth.equals(infoTableDepth)) infoTableDepth = 0;
+                if (tableDepth > 0) tableDepth--;
+            } else if (tagName.equals("thead") || tagName.equals("tfoot")) {
+                inTableHead = false;
+            }
+        }
+
+        /**
+         * Consumes the rest of a tag and returns the value of its id attribute, if any.
+         */
+        private String readAttributesForId() throws IOException {
+            String id = null;
+            int c;
+
+            while ((c = read()) != -1 && c != '>') {
+                if (Character.isWhitespace(c) || c == '/') continue;
+
+                StringBuilder attribute = new StringBuilder();
+                attribute.append((char) c);
+                while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                    attribute.append((char) read());
+                }
+                while (Character.isWhitespace(peek())) read();
+
+                String value = "";
+                if (peek() == '=') {
+                    read();
+                    while (Character.isWhitespace(peek())) read();
+                    value = readAttributeValue();
+                }
+
+                if (attribute.toString().equalsIgnoreCase("id")) id = Parser.unescapeEntities(value, true);
+            }
+
+            return id;
+        }
+
+        private String readAttributeValue() throws IOException {
+            StringBuilder value = new StringBuilder();
+            int quote = peek();
+
+            if (quote == '"' || quote == '\'') {
+                read();
+                int c;
+                while ((c = read()) != -1 && c != quote) value.append((char) c);
+            } else {
+                int c;
+                while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '>') value.append((char) read());
+            }
+
+            return value.toString();
+        }
+
+        private void skipPast(String terminator) throws IOException {
+            Integer matched = 0;
+            int c;
+
+            while (matched < terminator.length() && (c = read()) != -1) {
+                if (Character.toLowerCase(c) == terminator.charAt(matched)) {
+                    matched++;
+                } else {
+                    matched = (Character.toLowerCase(c) == terminator.charAt(0)) ? 1 : 0;
+                }
+            }
+        }
+
+        private Boolean isVoid(String tagName) {
+            switch (tagName) {
+                case "area": case "base": case "br": case "col": case "embed": case "hr": case "img":
+                case "input": case "link": case "meta": case "param": case "source": case "wbr":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private int read() throws IOException {
+            if (!fill()) return -1;
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (!fill()) return -1;
+            return buffer[position];
+        }
+
+        private Boolean fill() throws IOException {
+            if (position < length) return true;
+
+            length = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dindane.futbinwatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The way FutBINWatcher downloads pages.
+ */
+public interface Transport {
+    /**
+     * Sends a GET request. The returned response must be closed so its connection can be reused.
+     */
+    Response get(String url, Map<String, String> headers) throws IOException;
+
+    interface Response extends Closeable {
+        Integer getStatus() throws IOException;
+
+        String getHeader(String name);
+
+        /**
+         * Returns the charset announced by the Content-Type header, or null if there isn't any.
+         */
+        String getCharset();
+
+        /**
+         * Returns the body, already decompressed.
+         */
+        InputStream getBody() throws IOException;
+    }
+}
@@ -0,0 +1,273 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.Action;
+import com.dindane.futbinwatcher.exceptions.IdParsingException;
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads and parses players lists.
+ *
+ * A line is "buy|sell link|id [for] price", a link being a FutBIN player URL and an id its numeric
+ * FutBIN id, or the deprecated "link price". Lines are tokenized by hand, large lists are parsed in
+ * chunks by several threads, and every malformed line is reported instead of stopping at the first one.
+ */
+class WatchListLoader {
+    private static final String PLAYER_PATH = "16/player/";
+
+    /**
+     * Lists longer than this are parsed in parallel.
+     */
+    private static final Integer CHUNK_SIZE = 8192;
+
+    private final AtomicBoolean deprecationShown = new AtomicBoolean(false);
+
+    /**
+     * Parses the chunks of large lists, created by the first one and kept for the next reloads.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Reads a whole players list.
+     */
+    Result load(Path file) throws IOException {
+        List<String> texts = new ArrayList<>();
+        int[] lineNumbers = readLines(file, texts);
+
+        return parse(texts, lineNumbers);
+    }
+
+    /**
+     * Adds the lines of a players list worth parsing to texts, comments and blank lines excluded,
+     * and returns their line numbers.
+     */
+    int[] readLines(Path file, List<String> texts) throws IOException {
+        int[] lineNumbers = new int[256];
+        int count = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String text;
+            int lineNumber = 0;
+            while ((text = in.readLine()) != null) {
+                lineNumber++;
+                if (text.trim().isEmpty() || text.startsWith("#")) continue;
+
+                texts.add(text);
+                if (count == lineNumbers.length) lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+                lineNumbers[count++] = lineNumber;
+            }
+        }
+
+        return Arrays.copyOf(lineNumbers, count);
+    }
+
+    /**
+     * Parses lines of a players list. The lines that can't be parsed are left out of the result and reported.
+     *
+     * @param lineNumbers the line number of each text, used in the errors
+     */
+    Result parse(final List<String> texts, final int[] lineNumbers) {
+        final ParsedLine[] players = new ParsedLine[texts.size()];
+        final String[] errors = new String[texts.size()];
+
+        Integer threads = Math.min(Runtime.getRuntime().availableProcessors(), (texts.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        if (threads <= 1) {
+            parse(texts, lineNumbers, 0, texts.size(), players, errors);
+        } else {
+            List<Future<?>> chunks = new ArrayList<>();
+            try {
+                for (Integer start = 0; start < texts.size(); start += CHUNK_SIZE) {
+                    final Integer from = start;
+                    final Integer to = Math.min(texts.size(), start + CHUNK_SIZE);
+                    chunks.add(executor().submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            parse(texts, lineNumbers, from, to, players, errors);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> chunk : chunks) chunk.get();
+            } catch (InterruptedException | ExecutionException e) {
+                // Parsing doesn't block nor throw, finish on this thread.
+                for (Future<?> chunk : chunks) chunk.cancel(false);
+                parse(texts, lineNumbers, 0, texts.size(), players, errors);
+            }
+        }
+
+        Result result = new Result(players);
+        for (Integer i = 0; i < players.length; i++) {
+            if (players[i] != null) {
+                result.texts.add(texts.get(i));
+                result.players.add(players[i]);
+            } else {
+                result.errors.add(errors[i]);
+            }
+        }
+
+        return result;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "futbin-list-parser");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    private void parse(List<String> texts, int[] lineNumbers, int from, int to, ParsedLine[] players, String[] errors) {
+        for (int i = from; i < to; i++) {
+            try {
+                players[i] = parseLine(texts.get(i));
+            } catch (IdParsingException e) {
+                errors[i] = String.format("Line %d: %s", lineNumbers[i], e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parses a line of the players list, telling what's wrong with it if it can't be.
+     */
+    ParsedLine parseLine(String line) throws IdParsingException {
+        String[] parts = tokenize(line);
+
+        switch (parts.length) {
+            case 2:
+                if (deprecationShown.compareAndSet(false, true)) {
+                    System.out.println("\"link price\" notation is deprecated. Use \"buy link for price\" or \"sell link for price\".");
+                    System.out.println("Check the manual for more information: http://dinduks.github.io/futbin-watcher/");
+                }
+                return new ParsedLine(playerId(parts[0]), Action.BUY, price(line, parts[1]));
+            case 3:
+                return new ParsedLine(playerId(parts[1]), action(line, parts[0]), price(line, parts[2]));
+            case 4:
+                return new ParsedLine(playerId(parts[1]), action(line, parts[0]), price(line, parts[3]));
+            default:
+                throw new IdParsingException(String.format("Could not read \"%s\", it should be \"buy link for price\" or \"sell link for price\".", line));
+        }
+    }
+
+    /**
+     * Extracts the player's ID from a link, or returns a numeric ID as is.
+     */
+    String playerId(String link) throws IdParsingException {
+        if (isDigits(link, 0, link.length())) return link;
+
+        Integer start = link.indexOf(PLAYER_PATH);
+        if (start >= 0) {
+            start += PLAYER_PATH.length();
+            if (start < link.length() && Character.isDigit(link.charAt(start))) return link.substring(start);
+        }
+
+        throw new IdParsingException(String.format("Could not extract the player's id from \"%s\".", link));
+    }
+
+    private Action action(String line, String action) throws IdParsingException {
+        if (action.equalsIgnoreCase("buy")) return Action.BUY;
+        if (action.equalsIgnoreCase("sell")) return Action.SELL;
+
+        throw new IdParsingException(String.format("The action parameter in \"%s\" is not valid. It should be either \"buy\" or \"sell\".", line));
+    }
+
+    private Long price(String line, String price) throws IdParsingException {
+        if (!isDigits(price, 0, price.length()) || price.length() > 18) {
+            throw new IdParsingException(String.format("The price parameter in \"%s\" is not a number.", line));
+        }
+
+        return Long.parseLong(price);
+    }
+
+    /**
+     * Splits a line on spaces and tabs.
+     */
+    private static String[] tokenize(String line) {
+        String[] parts = new String[4];
+        int count = 0;
+        int i = 0;
+
+        while (i < line.length()) {
+            while (i < line.length() && isBlank(line.charAt(i))) i++;
+            if (i == line.length()) break;
+
+            int start = i;
+            while (i < line.length() && !isBlank(line.charAt(i))) i++;
+
+            if (count == parts.length) parts = Arrays.copyOf(parts, parts.length * 2);
+            parts[count++] = line.substring(start, i);
+        }
+
+        return Arrays.copyOf(parts, count);
+    }
+
+    private static Boolean isBlank(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static Boolean isDigits(String s, int from, int to) {
+        if (from >= to) return false;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        }
+
+        return true;
+    }
+
+    static class Result {
+        private final ParsedLine[] parsed;
+        private final List<String> texts = new ArrayList<>();
+        private final List<ParsedLine> players = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        private Result(ParsedLine[] parsed) {
+            this.parsed = parsed;
+        }
+
+        /**
+         * Returns the player of the i-th line given to the loader, or null if that line could not be parsed.
+         */
+        ParsedLine get(Integer i) {
+            return parsed[i];
+        }
+
+        /**
+         * Returns the text of every line parsed, in the order of {@link #getPlayers()}.
+         */
+        List<String> getTexts() {
+            return texts;
+        }
+
+        List<ParsedLine> getPlayers() {
+            return players;
+        }
+
+        /**
+         * Returns a description of every line that could not be parsed, with its line number.
+         */
+        List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.ParsedLine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the players list file and tells which players were added or removed when it changes.
+ *
+ * Lines are matched by their text: an unchanged line keeps its {@link ParsedLine}, so the prices and
+ * refresh times attached to it are kept, and only new lines are parsed.
+ */
+class WatchListReloader implements Closeable {
+    /**
+     * Time given to an editor to finish writing the file before it's read.
+     */
+    private static final Long SETTLE_DELAY = 200L;
+
+    private final Path file;
+    private final WatchListLoader loader;
+    private final WatchService watchService;
+
+    private List<String> texts = new ArrayList<>();
+    private List<ParsedLine> lines = new ArrayList<>();
+
+    WatchListReloader(Path file, WatchListLoader loader) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.loader = loader;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Reads the whole list, every player being added.
+     */
+    Diff load() throws IOException {
+        return reload();
+    }
+
+    /**
+     * Waits until the list changes or the timeout expires. Returns the players added and removed,
+     * or null if the list didn't change.
+     *
+     * Malformed lines are left out of the list and reported in the diff.
+     */
+    Diff awaitChange(Long timeoutMillis) throws IOException, InterruptedException {
+        Long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        while (true) {
+            Long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return null;
+
+            WatchKey key;
+            try {
+                key = watchService.poll(remaining, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return null;
+            }
+            if (key == null) return null;
+
+            Boolean touched = concernsFile(key);
+            if (!touched) continue;
+
+            // Editors often write a file in several steps, wait for the last one.
+            Thread.sleep(SETTLE_DELAY);
+            while ((key = watchService.poll()) != null) concernsFile(key);
+
+            Diff diff = reload();
+            if (!diff.isEmpty() || !diff.getErrors().isEmpty()) return diff;
+        }
+    }
+
+    /**
+     * Returns every player of the list as last read, in list order.
+     */
+    List<ParsedLine> getLines() {
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private Boolean concernsFile(WatchKey key) {
+        Boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                    (context instanceof Path && file.getFileName().equals(context))) {
+                touched = true;
+            }
+        }
+        key.reset();
+
+        return touched;
+    }
+
+    /**
+     * Reads the file again, reusing the players of the lines that didn't change.
+     */
+    private Diff reload() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return new Diff(lines, Collections.<ParsedLine>emptyList(), Collections.<ParsedLine>emptyList(), false,
+                    Collections.<String>emptyList());
+        }
+
+        Map<String, LinkedList<ParsedLine>> previous = new HashMap<>();
+        for (Integer i = 0; i < texts.size(); i++) {
+            LinkedList<ParsedLine> sameText = previous.get(texts.get(i));
+            if (sameText == null) {
+                sameText = new LinkedList<>();
+                previous.put(texts.get(i), sameText);
+            }
+            sameText.add(lines.get(i));
+        }
+
+        List<String> fileTexts = new ArrayList<>();
+        int[] lineNumbers = loader.readLines(file, fileTexts);
+
+        ParsedLine[] kept = new ParsedLine[fileTexts.size()];
+        List<String> unknownTexts = new ArrayList<>();
+        int[] unknownLineNumbers = new int[fileTexts.size()];
+        for (Integer i = 0; i < fileTexts.size(); i++) {
+            LinkedList<ParsedLine> sameText = previous.get(fileTexts.get(i));
+            if (sameText != null && !sameText.isEmpty()) {
+                kept[i] = sameText.removeFirst();
+            } else {
+                unknownLineNumbers[unknownTexts.size()] = lineNumbers[i];
+                unknownTexts.add(fileTexts.get(i));
+            }
+        }
+        WatchListLoader.Result parsed = loader.parse(unknownTexts, unknownLineNumbers);
+
+        List<String> newTexts = new ArrayList<>();
+        List<ParsedLine> newLines = new ArrayList<>();
+        List<ParsedLine> added = new ArrayList<>();
+        Integer unknown = 0;
+        for (Integer i = 0; i < fileTexts.size(); i++) {
+            ParsedLine line = kept[i];
+            if (line == null) {
+                line = parsed.get(unknown++);
+                if (line == null) continue;
+                added.add(line);
+            }
+
+            newTexts.add(fileTexts.get(i));
+            newLines.add(line);
+        }
+
+        List<ParsedLine> removed = new ArrayList<>();
+        for (LinkedList<ParsedLine> sameText : previous.values()) removed.addAll(sameText);
+
+        Boolean reordered = !newTexts.equals(texts);
+        texts = newTexts;
+        lines = newLines;
+        return new Diff(newLines, added, removed, reordered, parsed.getErrors());
+    }
+
+    static class Diff {
+        private final List<ParsedLine> lines;
+        private final List<ParsedLine> added;
+        private final List<ParsedLine> removed;
+        private final Boolean reordered;
+        private final List<String> errors;
+
+        Diff(List<ParsedLine> lines, List<ParsedLine> added, List<ParsedLine> removed, Boolean reordered,
+             List<String> errors) {
+            this.lines = lines;
+            this.added = added;
+            this.removed = removed;
+            this.reordered = reordered;
+            this.errors = errors;
+        }
+
+        /**
+         * Returns every player of the new list, in list order.
+         */
+        List<ParsedLine> getLines() {
+            return lines;
+        }
+
+        List<ParsedLine> getAdded() {
+            return added;
+        }
+
+        List<ParsedLine> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Returns a description of every line that could not be parsed, with its line number.
+         */
+        List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Tells whether the list is the same as before, lines moved around or edited included.
+         */
+        Boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && !reordered;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.dindane.futbinwatcher;
+
+import com.dindane.futbinwatcher.exceptions.HttpStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * POSTs every alert as a JSON object to a URL.
+ */
+public class WebhookAlertSink implements AlertSink {
+    private final URL url;
+
+    public WebhookAlertSink(URL url) {
+        this.url = url;
+    }
+
+    @Override
+    public void send(Alert alert) throws IOException {
+        byte[] body = toJson(alert).getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(HttpTransport.DEFAULT_CONNECT_TIMEOUT);
+        connection.setReadTimeout(HttpTransport.DEFAULT_READ_TIMEOUT);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try {
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+
+            Integer status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new HttpStatusException(String.format("HTTP error %d while posting an alert to \"%s\".", status, url), status);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static String toJson(Alert alert) {
+        AlertRule rule = alert.getRule();
+        return "{\"playerId\":" + Json.quote(rule.getPlayerId()) +
+                ",\"playerName\":" + Json.quote(alert.getPlayerName()) +
+                ",\"market\":" + Json.quote(rule.getMarket().toString()) +
+                ",\"rule\":" + Json.quote(rule.getDescription()) +
+                ",\"direction\":" + Json.quote(rule.getDirection().toString()) +
+                ",\"threshold\":" + rule.getThreshold() +
+                ",\"lowestBIN\":" + alert.getLowestBIN() +
+                ",\"timestamp\":" + alert.getTimestamp() +
+                ",\"message\":" + Json.quote(alert.getMessage()) + "}";
+    }
+}
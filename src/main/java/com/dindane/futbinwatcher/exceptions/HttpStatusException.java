@@ -0,0 +1,16 @@
+package com.dindane.futbinwatcher.exceptions;
+
+import java.io.IOException;
+
+public class HttpStatusException extends IOException {
+    private final Integer status;
+
+    public HttpStatusException(String message, Integer status) {
+        super(message);
+        this.status = status;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+}